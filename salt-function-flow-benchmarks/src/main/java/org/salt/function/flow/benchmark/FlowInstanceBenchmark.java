@@ -0,0 +1,78 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.salt.function.flow.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.salt.function.flow.FlowEngine;
+import org.salt.function.flow.FlowInstance;
+import org.salt.function.flow.node.register.FlowNodeManager;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end cost of a flow made of no-op nodes, from context creation to result.
+ * Compare with {@code baseline} to separate framework overhead from node work.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FlowInstanceBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int nodes;
+
+    private ThreadPoolTaskExecutor flowThreadPool;
+    private FlowEngine flowEngine;
+    private FlowInstance flowInstance;
+    private NoOpNode[] noOpNodes;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        flowThreadPool = new ThreadPoolTaskExecutor();
+        flowThreadPool.initialize();
+        flowEngine = new FlowEngine(new FlowNodeManager(), null, flowThreadPool);
+
+        noOpNodes = new NoOpNode[nodes];
+        FlowEngine.Builder builder = flowEngine.builder();
+        for (int i = 0; i < nodes; i++) {
+            noOpNodes[i] = new NoOpNode();
+            builder.next(noOpNodes[i]);
+        }
+        flowInstance = builder.build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        flowThreadPool.shutdown();
+    }
+
+    @Benchmark
+    public Integer baseline() {
+        Integer result = 1;
+        for (NoOpNode noOpNode : noOpNodes) {
+            result = noOpNode.process(result);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public Integer execute() {
+        return flowEngine.execute(flowInstance, 1);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.salt.function.flow.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.salt.function.flow.Info;
+import org.salt.function.flow.context.ContextBus;
+import org.salt.function.flow.node.FlowNode;
+import org.salt.function.flow.node.register.FlowNodeManager;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fixed cost added by {@link FlowNodeManager#execute} around a single node call:
+ * run id generation, run id key, putResult/putPreResult and condition merging.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FlowNodeManagerBenchmark {
+
+    @Param({"Integer", "Map"})
+    public String resultType;
+
+    private FlowNodeManager flowNodeManager;
+    private FlowNode<Object, Object> flowNode;
+    private Info info;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        flowNodeManager = new FlowNodeManager();
+        flowNode = (FlowNode<Object, Object>) ("Map".equals(resultType) ? new MapResultNode() : new NoOpNode());
+        info = Info.c(flowNode).cAlias("benchmark_alias");
+    }
+
+    @Setup(Level.Iteration)
+    public void createContext() {
+        ContextBus.create(1);
+    }
+
+    @TearDown(Level.Iteration)
+    public void cleanContext() {
+        ContextBus.clean();
+    }
+
+    @Benchmark
+    public Object process() {
+        return flowNode.process(1);
+    }
+
+    @Benchmark
+    public Object execute() {
+        return flowNodeManager.execute(flowNode);
+    }
+
+    @Benchmark
+    public Object executeWithInfo() {
+        return flowNodeManager.execute(flowNode, info);
+    }
+}
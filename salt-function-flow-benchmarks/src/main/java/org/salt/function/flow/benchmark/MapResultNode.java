@@ -0,0 +1,32 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.salt.function.flow.benchmark;
+
+import org.salt.function.flow.node.FlowNode;
+
+import java.util.Map;
+
+/**
+ * Node returning a Map, which the engine merges into the condition map after each call.
+ */
+public class MapResultNode extends FlowNode<Map<String, Object>, Object> {
+
+    private static final Map<String, Object> RESULT = Map.of("type", "VIP", "amount", 200, "channel", "app");
+
+    @Override
+    public Map<String, Object> process(Object input) {
+        return RESULT;
+    }
+}
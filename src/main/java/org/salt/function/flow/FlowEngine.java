@@ -18,21 +18,27 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.salt.function.flow.config.IFlowInit;
 import org.salt.function.flow.context.ContextBus;
+import org.salt.function.flow.context.ContextLayout;
 import org.salt.function.flow.node.FlowNode;
 import org.salt.function.flow.node.register.FlowNodeManager;
+import org.salt.function.flow.node.structure.BranchIndex;
 import org.salt.function.flow.node.structure.FlowNodeStructure;
 import org.salt.function.flow.node.structure.internal.*;
+import org.salt.function.flow.thread.CancelToken;
 import org.salt.function.flow.thread.TheadHelper;
 import org.salt.function.flow.util.FlowUtil;
+import org.salt.function.flow.util.TtlCache;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.util.CollectionUtils;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
@@ -45,16 +51,34 @@ public class FlowEngine implements InitializingBean {
 
     protected ThreadPoolTaskExecutor flowThreadPool;
 
+    /**
+     * Executor for gateway branches when it is not the flow thread pool, e.g. virtual threads
+     */
+    protected ExecutorService flowExecutor;
+
     private static ConcurrentMap<String, FlowInstance> processInstanceMap = new ConcurrentHashMap<>();
 
+    private static final int STREAM_BUFFER_SIZE = 256;
+
     public FlowEngine(FlowNodeManager flowNodeManager, IFlowInit flowInit, ThreadPoolTaskExecutor flowThreadPool) {
         this.flowNodeManager = flowNodeManager;
         this.flowInit = flowInit;
         this.flowThreadPool = flowThreadPool;
     }
 
+    public FlowEngine(FlowNodeManager flowNodeManager, IFlowInit flowInit, ExecutorService flowExecutor) {
+        this.flowNodeManager = flowNodeManager;
+        this.flowInit = flowInit;
+        this.flowExecutor = flowExecutor;
+    }
+
+    protected ExecutorService getFlowExecutor() {
+        return flowExecutor != null ? flowExecutor : flowThreadPool.getThreadPoolExecutor();
+    }
+
     @Override
     public void afterPropertiesSet() {
+        flowNodeManager.setResumeExecutor(getFlowExecutor());
         if (flowInit != null) {
             flowInit.configure(this);
         }
@@ -96,7 +120,7 @@ public class FlowEngine implements InitializingBean {
         FlowInstance flowInstance = processInstanceMap.get(flowId);
         if (flowInstance != null) {
             R result = flowInstance.execute();
-            if (result != null) {
+            if (result != null && !CancelToken.cancelled()) {
                 ((ContextBus) ContextBus.get()).putResult(flowId, result);
             }
             return result;
@@ -107,7 +131,7 @@ public class FlowEngine implements InitializingBean {
     public <R> R execute(FlowInstance flowInstance) {
         if (flowInstance != null) {
             R result = flowInstance.execute();
-            if (result != null) {
+            if (result != null && !CancelToken.cancelled()) {
                 ((ContextBus) ContextBus.get()).putResult(flowInstance.getFlowId(), result);
             }
             return result;
@@ -115,6 +139,133 @@ public class FlowEngine implements InitializingBean {
         throw new RuntimeException("no have this process");
     }
 
+    /**
+     * Non-blocking counterpart of {@link #execute(String, Object)}: the flow starts on the flow executor and its context
+     * travels with the continuations instead of the caller's thread, concurrent gateways join their branches without
+     * parking a thread; an unknown flow fails the returned future
+     */
+    public <T, R> CompletableFuture<R> executeAsync(String flowId, T param) {
+        return executeAsync(flowId, param, null);
+    }
+
+    public <T, R> CompletableFuture<R> executeAsync(String flowId, T param, Map<String, Object> conditionMap) {
+        return executeAsync(flowId, param, conditionMap, null);
+    }
+
+    public <T, R> CompletableFuture<R> executeAsync(String flowId, T param, Map<String, Object> conditionMap, Map<String, Object> transmitMap) {
+        FlowInstance flowInstance = processInstanceMap.get(flowId);
+        if (flowInstance != null) {
+            return flowInstance.executeAsync(param, transmitMap, conditionMap, getFlowExecutor());
+        }
+        return CompletableFuture.failedFuture(new RuntimeException("no have this process"));
+    }
+
+    public <T, R> CompletableFuture<R> executeAsync(FlowInstance flowInstance, T param) {
+        return executeAsync(flowInstance, param, null);
+    }
+
+    public <T, R> CompletableFuture<R> executeAsync(FlowInstance flowInstance, T param, Map<String, Object> transmitMap) {
+        return flowInstance.executeAsync(param, transmitMap, null, getFlowExecutor());
+    }
+
+    public <T, R> CompletableFuture<R> executeAsync(FlowInstance flowInstance, T param, Map<String, Object> transmitMap, Map<String, Object> conditionMap) {
+        return flowInstance.executeAsync(param, transmitMap, conditionMap, getFlowExecutor());
+    }
+
+    public <R> CompletableFuture<R> executeAsync(String flowId) {
+        FlowInstance flowInstance = processInstanceMap.get(flowId);
+        if (flowInstance != null) {
+            return executeNestedAsync(flowId, flowInstance);
+        }
+        return CompletableFuture.failedFuture(new RuntimeException("no have this process: " + flowId));
+    }
+
+    public <R> CompletableFuture<R> executeAsync(FlowInstance flowInstance) {
+        if (flowInstance != null) {
+            return executeNestedAsync(flowInstance.getFlowId(), flowInstance);
+        }
+        return CompletableFuture.failedFuture(new RuntimeException("no have this process"));
+    }
+
+    private <R> CompletableFuture<R> executeNestedAsync(String resultId, FlowInstance flowInstance) {
+        ContextBus contextBus = (ContextBus) ContextBus.get();
+        CancelToken cancelToken = CancelToken.current();
+        return flowInstance.<R>executeAsync().thenApply(result -> {
+            if (result != null && (cancelToken == null || !cancelToken.isCancelled())) {
+                contextBus.putResult(resultId, result);
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Run the flow once per param and return the results in param order, nodes extending
+     * {@link org.salt.function.flow.node.BatchFlowNode} on the top level are called once with all inputs
+     */
+    public <T, R> List<R> executeBatch(String flowId, List<T> params) {
+        return executeBatch(flowId, params, null);
+    }
+
+    public <T, R> List<R> executeBatch(String flowId, List<T> params, Map<String, Object> conditionMap) {
+        return executeBatch(flowId, params, conditionMap, null);
+    }
+
+    public <T, R> List<R> executeBatch(String flowId, List<T> params, Map<String, Object> conditionMap, Map<String, Object> transmitMap) {
+        FlowInstance flowInstance = processInstanceMap.get(flowId);
+        if (flowInstance != null) {
+            return flowInstance.executeBatch(params, transmitMap, conditionMap);
+        }
+        throw new RuntimeException("no have this process");
+    }
+
+    public <T, R> List<R> executeBatch(FlowInstance flowInstance, List<T> params) {
+        return flowInstance.executeBatch(params, null, null);
+    }
+
+    public <T, R> List<R> executeBatch(FlowInstance flowInstance, List<T> params, Map<String, Object> transmitMap, Map<String, Object> conditionMap) {
+        return flowInstance.executeBatch(params, transmitMap, conditionMap);
+    }
+
+    /**
+     * Run the flow over every record of the source, records move through the top level steps as a pipeline
+     * with at most {@code bufferSize} records waiting per step; results are published in record order
+     */
+    public <T, R> Flow.Publisher<R> stream(String flowId, Flow.Publisher<T> source) {
+        return stream(flowId, source, STREAM_BUFFER_SIZE);
+    }
+
+    public <T, R> Flow.Publisher<R> stream(String flowId, Flow.Publisher<T> source, int bufferSize) {
+        FlowInstance flowInstance = processInstanceMap.get(flowId);
+        if (flowInstance != null) {
+            return flowInstance.stream(source, getFlowExecutor(), bufferSize);
+        }
+        throw new RuntimeException("no have this process");
+    }
+
+    public <T, R> Flow.Publisher<R> stream(FlowInstance flowInstance, Flow.Publisher<T> source) {
+        return flowInstance.stream(source, getFlowExecutor(), STREAM_BUFFER_SIZE);
+    }
+
+    public <T, R> Flow.Publisher<R> stream(FlowInstance flowInstance, Flow.Publisher<T> source, int bufferSize) {
+        return flowInstance.stream(source, getFlowExecutor(), bufferSize);
+    }
+
+    /**
+     * Staged execution of the flow across requests, each top level step on its own pool of {@code threads}
+     * (once for all steps or one per step) behind a queue of {@code queueCapacity} requests, see {@link FlowPipeline}
+     */
+    public FlowPipeline pipeline(String flowId, int queueCapacity, int... threads) {
+        FlowInstance flowInstance = processInstanceMap.get(flowId);
+        if (flowInstance != null) {
+            return flowInstance.pipeline(queueCapacity, threads);
+        }
+        throw new RuntimeException("no have this process");
+    }
+
+    public FlowPipeline pipeline(FlowInstance flowInstance, int queueCapacity, int... threads) {
+        return flowInstance.pipeline(queueCapacity, threads);
+    }
+
     public void stop(FlowInstance flowInstance) {
         if (flowInstance != null) {
             flowInstance.stop();
@@ -125,10 +276,44 @@ public class FlowEngine implements InitializingBean {
         return new Builder(this).id(FlowUtil.id());
     }
 
+    /**
+     * Resolve the node or sub flow an info points to, once, following the same precedence as execution:
+     * node instance, function, registered node id, flow instance, registered flow id.
+     * A flow id registered later stays unresolved and is resolved again on first execution.
+     */
+    public boolean resolve(Info info) {
+        if (info.getTarget() != null || info.getTargetFlow() != null) {
+            return true;
+        }
+        if (info.getFlowNode() != null) {
+            info.setTarget(info.getFlowNode());
+        } else if (info.getFunNode() != null) {
+            Function<Object, ?> funNode = info.getFunNode();
+            FlowNode<Object, Object> target = new FlowNode<>() {
+                @Override
+                public Object process(Object input) {
+                    return funNode.apply(input);
+                }
+            };
+            target.setNodeId(info.getId());
+            info.setTarget(target);
+        } else if (flowNodeManager.getIFlowNode(info.getId()) != null) {
+            info.setTarget(flowNodeManager.getIFlowNode(info.getId()));
+        } else if (info.getFlow() != null) {
+            info.setTargetFlow(info.getFlow());
+        } else {
+            info.setTargetFlow(processInstanceMap.get(info.getId()));
+        }
+        return info.getTarget() != null || info.getTargetFlow() != null;
+    }
+
     public static class Builder {
         String flowId;
         List<FlowNode<?,?>> nodeList;
         private final FlowEngine flowEngine;
+        private FlowResultCache resultCache;
+        private boolean parallelize;
+        private long stageTimeout;
 
         public Builder(FlowEngine flowEngine) {
             this.flowEngine = flowEngine;
@@ -172,25 +357,7 @@ public class FlowEngine implements InitializingBean {
 
         //concurrent
         public Builder concurrent(Object... node) {
-            List<Object> infos = new ArrayList<>();
-            long timeout = InitParam.MAP_WAIT_TIMEOUT;
-            ExecutorService executor = null;
-            for (Object o : node) {
-                if (o instanceof Long) {
-                    if ((long) o > 0) {
-                        timeout = (Long) o;
-                    }
-                } else if (o instanceof Integer) {
-                    if ((int) o > 0) {
-                        timeout = (long) (int) o;
-                    }
-                } else if (o instanceof Executor) {
-                    executor = (ExecutorService) o;
-                } else {
-                    infos.add(o);
-                }
-            }
-            return concurrent(InitParam.builder().infos(toInfos(infos.toArray())).isolate(executor).timeout(timeout).build());
+            return concurrent(gatewayParam(node));
         }
 
         @SafeVarargs
@@ -213,6 +380,105 @@ public class FlowEngine implements InitializingBean {
             return this;
         }
 
+        //dag
+        /**
+         * Run the nodes as a dependency graph, each node starting once the nodes it declares with
+         * {@link Info#cDepends} have completed; the result is the map of node results like {@code concurrent}
+         */
+        public Builder dag(Object... node) {
+            InitParam initParam = gatewayParam(node);
+            init(tempName("dag", initParam.idTmp), new FlowNodeDag(), initParam);
+            return this;
+        }
+
+        //race
+        public Builder race(Object... node) {
+            return race(gatewayParam(node));
+        }
+
+        @SafeVarargs
+        public final Builder race(Function<Object, ?>... funNodes) {
+            return race(InitParam.builder().infos(toInfos(funNodes)).build());
+        }
+
+        @SafeVarargs
+        public final Builder race(long timeout, Function<Object, ?>... funNodes) {
+            return race(InitParam.builder().infos(toInfos(funNodes)).timeout(timeout).build());
+        }
+
+        private Builder race(InitParam initParam) {
+            init(tempName("race", initParam.idTmp), new FlowNodeRace(), initParam);
+            return this;
+        }
+
+        //forEach
+        public Builder forEach(Function<Object, ? extends Collection<?>> items, Function<List<Object>, ?> combiner, Object... node) {
+            return forEach(items, 1, combiner, node);
+        }
+
+        /**
+         * Run the nodes once per chunk of {@code chunkSize} items in parallel, a chunk is passed to the nodes as a list;
+         * {@code items} extracts the collection from the input, null when the input is the collection;
+         * each chunk runs on its own copy of the context, merged back in chunk order after all chunks complete
+         */
+        public Builder forEach(Function<Object, ? extends Collection<?>> items, int chunkSize, Function<List<Object>, ?> combiner, Object... node) {
+            InitParam initParam = gatewayParam(node);
+            init(tempName("forEach", initParam.idTmp), new FlowNodeForEach(items, chunkSize, combiner), initParam);
+            return this;
+        }
+
+        //hedge
+        public Builder hedge(Object... node) {
+            return hedge(gatewayParam(node));
+        }
+
+        private Builder hedge(InitParam initParam) {
+            if (initParam.infos == null || initParam.infos.length == 0 || initParam.infos.length > 2) {
+                throw new RuntimeException("hedge takes a primary node and at most one backup node.");
+            }
+            init(tempName("hedge", initParam.idTmp), new FlowNodeHedge(), initParam);
+            return this;
+        }
+
+        //quorum
+        public Builder quorum(int quorum, Object... node) {
+            InitParam initParam = gatewayParam(node);
+            if (quorum <= 0 || quorum > initParam.infos.length) {
+                throw new RuntimeException("quorum must be between 1 and the node count. quorum:" + quorum);
+            }
+            init(tempName("quorum", initParam.idTmp), new FlowNodeQuorum(quorum), initParam);
+            return this;
+        }
+
+        /**
+         * Split gateway varargs into the nodes and the gateway settings: a positive {@code Long} or {@code Integer}
+         * is the timeout, an {@code Executor} the isolated pool and a {@link GatewayOption} an option
+         */
+        private InitParam gatewayParam(Object[] node) {
+            List<Object> infos = new ArrayList<>();
+            long timeout = InitParam.MAP_WAIT_TIMEOUT;
+            ExecutorService executor = null;
+            Set<GatewayOption> options = EnumSet.noneOf(GatewayOption.class);
+            for (Object o : node) {
+                if (o instanceof Long) {
+                    if ((long) o > 0) {
+                        timeout = (Long) o;
+                    }
+                } else if (o instanceof Integer) {
+                    if ((int) o > 0) {
+                        timeout = (long) (int) o;
+                    }
+                } else if (o instanceof Executor) {
+                    executor = (ExecutorService) o;
+                } else if (o instanceof GatewayOption) {
+                    options.add((GatewayOption) o);
+                } else {
+                    infos.add(o);
+                }
+            }
+            return InitParam.builder().infos(toInfos(infos.toArray())).isolate(executor).timeout(timeout).options(options).build();
+        }
+
         //notify
         public Builder notify(Object... node) {
             List<Object> infos = new ArrayList<>();
@@ -296,23 +562,162 @@ public class FlowEngine implements InitializingBean {
             return loop(condition, InitParam.builder().infos(toInfos(funNodes)).build());
         }
 
+        /**
+         * Keep up to {@code parallelism} independent iterations in flight, each with the loop input as input, its
+         * index in {@code getLoopIndex()} and its own copy of the context bus; the next node gets the list of
+         * iteration results in index order as input
+         */
+        public Builder loop(int parallelism, Function<Integer, Boolean> condition, Object... node) {
+            InitParam initParam = InitParam.builder().infos(toInfos(node)).build();
+            init(tempName("loop", initParam.idTmp), new FlowNodeLoop(condition, parallelism), initParam);
+            return this;
+        }
+
         private Builder loop(Function<Integer, Boolean> condition, InitParam initParam) {
             init(tempName("all", initParam.idTmp), new FlowNodeLoop(condition), initParam);
             return this;
         }
 
+        /**
+         * Cache the flow result of {@code execute(flowId, param)} keyed by {@code paramKey} of the param together with
+         * the condition map and the given transmit entries, a hit returns without running the flow but still calls the
+         * {@code beforeRun} and {@code afterRun} hooks. A cached result is the same instance for every hit and every
+         * caller, so it must be treated as immutable
+         */
+        public Builder cache(Function<Object, Object> paramKey, long ttlMillis, int maxSize, String... transmitKeys) {
+            this.resultCache = new FlowResultCache(paramKey, transmitKeys, new TtlCache<>(ttlMillis, maxSize));
+            return this;
+        }
+
+        /**
+         * Let the flow run independent {@code next} steps in parallel: a step whose node declares its reads with
+         * {@link Info#cReads} and does not read the step right before it does not wait for the steps before it,
+         * only for the nodes it reads, and joins the stage they form; any other step starts a new stage. Stages keep
+         * the chain's {@code getPreResult}, flow result, conditions, failure and stop, and like the chain have no deadline.
+         */
+        public Builder parallelize() {
+            return parallelize(0);
+        }
+
+        /**
+         * Same as {@link #parallelize()}, a stage running longer than {@code timeout} milliseconds fails the flow
+         * with a timeout, 0 or less for no deadline
+         */
+        public Builder parallelize(long timeout) {
+            this.parallelize = true;
+            this.stageTimeout = timeout;
+            return this;
+        }
+
         public String register() {
             check();
             if (processInstanceMap.containsKey(flowId)) {
                 throw new RuntimeException("flow already exists. flowId:" + flowId);
             }
-            processInstanceMap.put(flowId, new FlowInstance(flowId, nodeList, flowEngine.flowNodeManager));
+            processInstanceMap.put(flowId, compile());
             return flowId;
         }
 
         public FlowInstance build() {
             check();
-            return new FlowInstance(flowId, nodeList, flowEngine.flowNodeManager);
+            return compile();
+        }
+
+        /**
+         * Compile the node list into an immutable plan: every node and sub flow reference is resolved once,
+         * include expressions are parsed once (and indexed when a gateway routes on one key), and every id or alias
+         * the flow writes a result for gets a slot in the flow layout.
+         */
+        private FlowInstance compile() {
+            List<FlowNode<?,?>> nodeList = parallelize ? stages(this.nodeList) : this.nodeList;
+            Info[] steps = new Info[nodeList.size()];
+            List<Info> infos = new ArrayList<>();
+            Set<String> ids = new LinkedHashSet<>();
+            ids.add(flowId);
+            for (int i = 0; i < nodeList.size(); i++) {
+                FlowNode<?,?> flowNode = nodeList.get(i);
+                steps[i] = Info.c(flowNode);
+                steps[i].setTarget(flowNode);
+                infos.add(steps[i]);
+                if (flowNode instanceof FlowNodeStructure<?> flowNodeStructure && flowNodeStructure.getNodeInfoList() != null) {
+                    for (Info info : flowNodeStructure.getNodeInfoList()) {
+                        flowEngine.resolve(info);
+                        if (StringUtils.isNotEmpty(info.getInclude()) && info.getCondition() == null) {
+                            info.setCondition(FlowUtil.compile(info.getInclude()));
+                        }
+                        if (info.getTargetFlow() != null) {
+                            ids.addAll(info.getTargetFlow().getLayout().getIds());
+                        }
+                        infos.add(info);
+                    }
+                    flowNodeStructure.setBranchIndex(BranchIndex.of(flowNodeStructure.getNodeInfoList()));
+                }
+            }
+            infos.forEach(info -> ids.add(info.getIdOrAlias()));
+            ContextLayout layout = new ContextLayout(ids);
+            for (Info info : infos) {
+                info.setLayout(layout);
+                info.setSlot(layout.indexOf(info.getIdOrAlias()));
+            }
+            FlowInstance flowInstance = new FlowInstance(flowId, steps, layout, flowEngine.flowNodeManager);
+            flowInstance.setResultCache(resultCache);
+            return flowInstance;
+        }
+
+        /**
+         * Fold runs of unconditional single node {@code next} steps into sequential dag stages, a node joins the
+         * current stage when it declares its reads, does not read the node right before it, whose result would be
+         * its input in the chain, and neither writes nor is read by a result the stage already touches, so reads
+         * resolve to the same node as in the chain
+         */
+        private List<FlowNode<?,?>> stages(List<FlowNode<?,?>> nodeList) {
+            List<FlowNode<?,?>> nodes = new ArrayList<>();
+            List<FlowNode<?,?>> stage = new ArrayList<>();
+            Set<String> touched = new HashSet<>();
+            for (FlowNode<?,?> flowNode : nodeList) {
+                Info info = stepInfo(flowNode);
+                if (info == null || stage.isEmpty() || info.getReads() == null || touched.contains(info.getIdOrAlias())
+                        || info.getReads().contains(stepInfo(stage.get(stage.size() - 1)).getIdOrAlias())) {
+                    addStage(nodes, stage);
+                    stage.clear();
+                    touched.clear();
+                    if (info == null) {
+                        nodes.add(flowNode);
+                        continue;
+                    }
+                }
+                stage.add(flowNode);
+                touched.add(info.getIdOrAlias());
+                if (info.getReads() != null) {
+                    touched.addAll(info.getReads());
+                }
+            }
+            addStage(nodes, stage);
+            return nodes;
+        }
+
+        private void addStage(List<FlowNode<?,?>> nodes, List<FlowNode<?,?>> stage) {
+            if (stage.size() == 1) {
+                nodes.add(stage.get(0));
+            } else if (stage.size() > 1) {
+                Info[] infos = stage.stream().map(this::stepInfo).toArray(Info[]::new);
+                InitParam initParam = InitParam.builder().infos(infos).timeout(stageTimeout).build();
+                nodes.add(setup(tempName("stage", initParam.idTmp), new FlowNodeDag(true), initParam));
+            }
+        }
+
+        /**
+         * The node of a {@code next} step with a single unconditional node, null for any other step
+         */
+        private Info stepInfo(FlowNode<?,?> flowNode) {
+            if (flowNode instanceof FlowNodeNext flowNodeNext && flowNodeNext.getNodeInfoList() != null
+                    && flowNodeNext.getNodeInfoList().size() == 1) {
+                Info info = flowNodeNext.getNodeInfoList().get(0);
+                if (StringUtils.isEmpty(info.getInclude()) && info.getMatch() == null) {
+                    return info;
+                }
+            }
+            return null;
         }
 
         private void check() {
@@ -356,6 +761,10 @@ public class FlowEngine implements InitializingBean {
 
 
         private void init(String id, FlowNode<?,?> flowNode, InitParam initParam) {
+            nodeList.add(setup(id, flowNode, initParam));
+        }
+
+        private FlowNode<?,?> setup(String id, FlowNode<?,?> flowNode, InitParam initParam) {
 
             flowNode.setNodeId(id);
             if (flowNode instanceof FlowNodeStructure) {
@@ -366,8 +775,9 @@ public class FlowEngine implements InitializingBean {
                 if (initParam.infos != null) {
                     flowNodeStructure.setNodeInfoList(Arrays.asList(initParam.infos));
                 }
+                flowNodeStructure.setOptions(initParam.options);
             }
-            nodeList.add(flowNode);
+            return flowNode;
         }
 
         private TheadHelper creatThreadHelper(InitParam initParam) {
@@ -376,7 +786,7 @@ public class FlowEngine implements InitializingBean {
                         .executor(
                                 initParam.isolate != null ?
                                         initParam.isolate :
-                                        flowEngine.flowThreadPool.getThreadPoolExecutor()
+                                        flowEngine.getFlowExecutor()
                         ).build();
         }
     }
@@ -392,5 +802,7 @@ public class FlowEngine implements InitializingBean {
         long timeout = MAP_WAIT_TIMEOUT;
         ExecutorService isolate;
         Info[] infos;
+        @lombok.Builder.Default
+        Set<GatewayOption> options = EnumSet.noneOf(GatewayOption.class);
     }
 }
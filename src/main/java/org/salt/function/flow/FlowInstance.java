@@ -14,32 +14,51 @@
 
 package org.salt.function.flow;
 
+import lombok.AccessLevel;
 import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.salt.function.flow.context.ContextBus;
+import org.salt.function.flow.context.ContextLayout;
 import org.salt.function.flow.context.IContextBus;
-import org.salt.function.flow.node.FlowNode;
+import org.salt.function.flow.node.BatchFlowNode;
 import org.salt.function.flow.node.register.FlowNodeManager;
 import org.salt.function.flow.thread.TheadHelper;
-import org.springframework.util.CollectionUtils;
+import org.salt.function.flow.util.TtlCache;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 @Slf4j
 public class FlowInstance {
     @Getter
     private String flowId;
-    private List<FlowNode<?,?>> nodeList;
+    /**
+     * Compiled top level nodes, each wrapped in an info bound to the flow layout
+     */
+    private Info[] steps;
+    @Getter
+    private ContextLayout layout;
     private FlowNodeManager flowNodeManager;
+    /**
+     * Result cache configured on the builder, null when results are not cached
+     */
+    @Setter(AccessLevel.PACKAGE)
+    private FlowResultCache resultCache;
 
     protected FlowInstance() {
     }
 
-    protected FlowInstance(String flowId, List<FlowNode<?,?>> nodeList, FlowNodeManager flowNodeManager) {
+    protected FlowInstance(String flowId, Info[] steps, ContextLayout layout, FlowNodeManager flowNodeManager) {
         this.flowId = flowId;
-        this.nodeList = nodeList;
+        this.steps = steps;
+        this.layout = layout;
         this.flowNodeManager = flowNodeManager;
     }
 
@@ -56,8 +75,38 @@ public class FlowInstance {
     }
 
     protected <T, R> R execute(T param, Map<String, Object> transmitMap, Map<String, Object> conditionMap, Consumer<T> beforeRun, Consumer<R> afterRun) {
+        Object cacheKey = resultCache != null ? resultCache.key(param, transmitMap, conditionMap) : null;
+        if (cacheKey != null) {
+            R result = resultCache.get(cacheKey);
+            if (result != null) {
+                hit(param, result, beforeRun, afterRun);
+                return result;
+            }
+            result = run(param, transmitMap, conditionMap, beforeRun, afterRun);
+            resultCache.put(cacheKey, result);
+            return result;
+        }
+        return run(param, transmitMap, conditionMap, beforeRun, afterRun);
+    }
+
+    /**
+     * A cache hit runs no node but still calls the hooks, {@code afterRun} gets the cached result
+     */
+    private <T, R> void hit(T param, R result, Consumer<T> beforeRun, Consumer<R> afterRun) {
+        try {
+            if (beforeRun != null) {
+                beforeRun.accept(param);
+            }
+        } finally {
+            if (afterRun != null) {
+                afterRun.accept(result);
+            }
+        }
+    }
+
+    private <T, R> R run(T param, Map<String, Object> transmitMap, Map<String, Object> conditionMap, Consumer<T> beforeRun, Consumer<R> afterRun) {
         IContextBus parent = ContextBus.get();
-        ContextBus contextBus = ContextBus.create(param);
+        ContextBus contextBus = ContextBus.create(param, layout);
         if (transmitMap != null && !transmitMap.isEmpty()) {
             transmitMap.forEach(contextBus::putTransmit);
         }
@@ -80,30 +129,180 @@ public class FlowInstance {
     }
 
     protected <R> R execute() {
-        if (!CollectionUtils.isEmpty(nodeList)) {
+        if (steps != null && steps.length > 0) {
             ContextBus contextBus = (ContextBus) ContextBus.get();
             contextBus.setFlowResult(null);
-            for (FlowNode<?,?> flowNode : nodeList) {
-                flowNodeManager.execute(flowNode);
-                if (contextBus.isRollbackProcess()) {
-                    contextBus.roolbackAll();
-                    contextBus.setFlowResult(null);
-                    break;
-                }
-                if (contextBus.isStopProcess()) {
-                    contextBus.setFlowResult(null);
+            for (Info step : steps) {
+                flowNodeManager.execute(step.getTarget(), step);
+                if (isEnd(contextBus)) {
                     break;
                 }
             }
-            R result = contextBus.getFlowResult();
+            return complete(contextBus);
+        }
+        throw new RuntimeException("processInstance node list is empty.");
+    }
+
+    /**
+     * Start the flow on the executor, so the caller thread runs none of its nodes
+     */
+    protected <T, R> CompletableFuture<R> executeAsync(T param, Map<String, Object> transmitMap, Map<String, Object> conditionMap, Executor executor) {
+        Object cacheKey = resultCache != null ? resultCache.key(param, transmitMap, conditionMap) : null;
+        if (cacheKey != null) {
+            R result = resultCache.get(cacheKey);
             if (result != null) {
-                contextBus.putResult(this.getFlowId(), result);
+                return CompletableFuture.completedFuture(result);
             }
-            return result;
+            return this.<T, R>runAsync(param, transmitMap, conditionMap, executor).thenApply(value -> {
+                resultCache.put(cacheKey, value);
+                return value;
+            });
+        }
+        return runAsync(param, transmitMap, conditionMap, executor);
+    }
+
+    private <T, R> CompletableFuture<R> runAsync(T param, Map<String, Object> transmitMap, Map<String, Object> conditionMap, Executor executor) {
+        TheadHelper.Snapshot snapshot = TheadHelper.fork();
+        return CompletableFuture.supplyAsync(() -> snapshot.call(() -> {
+            ContextBus contextBus = ContextBus.create(param, layout);
+            if (transmitMap != null && !transmitMap.isEmpty()) {
+                transmitMap.forEach(contextBus::putTransmit);
+            }
+            if (conditionMap != null && !conditionMap.isEmpty()) {
+                conditionMap.forEach(contextBus::addCondition);
+            }
+            return this.<R>executeAsync();
+        }), executor).thenCompose(Function.identity());
+    }
+
+    /**
+     * Run the steps in the current context, each step starting when the previous one completes;
+     * steps that complete synchronously are chained in a loop rather than through callbacks
+     */
+    protected <R> CompletableFuture<R> executeAsync() {
+        if (steps != null && steps.length > 0) {
+            ContextBus contextBus = (ContextBus) ContextBus.get();
+            contextBus.setFlowResult(null);
+            TheadHelper.Snapshot snapshot = TheadHelper.capture();
+            return executeAsync(0, contextBus, snapshot).thenApply(v -> snapshot.call(() -> complete(contextBus)));
         }
         throw new RuntimeException("processInstance node list is empty.");
     }
 
+    private CompletableFuture<Void> executeAsync(int from, ContextBus contextBus, TheadHelper.Snapshot snapshot) {
+        for (int i = from; i < steps.length; i++) {
+            CompletableFuture<?> future = flowNodeManager.executeAsync(steps[i].getTarget(), steps[i]);
+            if (!future.isDone() || future.isCompletedExceptionally()) {
+                int next = i + 1;
+                return future.thenCompose(result -> snapshot.call(() -> isEnd(contextBus)
+                        ? CompletableFuture.completedFuture(null)
+                        : executeAsync(next, contextBus, snapshot)));
+            }
+            if (isEnd(contextBus)) {
+                break;
+            }
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Run the flow over several params in lock-step: every run keeps its own context and each step is executed
+     * for all runs still going before the next one, so a {@link BatchFlowNode} is called once per step
+     */
+    protected <T, R> List<R> executeBatch(List<T> params, Map<String, Object> transmitMap, Map<String, Object> conditionMap) {
+        if (steps == null || steps.length == 0) {
+            throw new RuntimeException("processInstance node list is empty.");
+        }
+        List<TheadHelper.Snapshot> contexts = new ArrayList<>(params.size());
+        List<ContextBus> contextBuses = new ArrayList<>(params.size());
+        for (T param : params) {
+            contexts.add(TheadHelper.fork().call(() -> {
+                ContextBus contextBus = ContextBus.create(param, layout);
+                if (transmitMap != null && !transmitMap.isEmpty()) {
+                    transmitMap.forEach(contextBus::putTransmit);
+                }
+                if (conditionMap != null && !conditionMap.isEmpty()) {
+                    conditionMap.forEach(contextBus::addCondition);
+                }
+                contextBus.setFlowResult(null);
+                contextBuses.add(contextBus);
+                return TheadHelper.capture();
+            }));
+        }
+        List<Integer> running = new ArrayList<>(params.size());
+        for (int i = 0; i < params.size(); i++) {
+            running.add(i);
+        }
+        for (Info step : steps) {
+            if (running.isEmpty()) {
+                break;
+            }
+            List<TheadHelper.Snapshot> batch = new ArrayList<>(running.size());
+            running.forEach(i -> batch.add(contexts.get(i)));
+            flowNodeManager.executeBatch(step.getTarget(), step, batch);
+            running.removeIf(i -> contexts.get(i).call(() -> isEnd(contextBuses.get(i))));
+        }
+        List<R> results = new ArrayList<>(params.size());
+        for (int i = 0; i < params.size(); i++) {
+            ContextBus contextBus = contextBuses.get(i);
+            results.add(contexts.get(i).call(() -> complete(contextBus)));
+        }
+        return results;
+    }
+
+    boolean isEnd(ContextBus contextBus) {
+        if (contextBus.isRollbackProcess()) {
+            contextBus.roolbackAll();
+            contextBus.setFlowResult(null);
+            return true;
+        }
+        if (contextBus.isStopProcess()) {
+            contextBus.setFlowResult(null);
+            return true;
+        }
+        return false;
+    }
+
+    <R> R complete(ContextBus contextBus) {
+        R result = contextBus.getFlowResult();
+        if (result != null) {
+            contextBus.putResult(layout, 0, flowId, result);
+        }
+        return result;
+    }
+
+    /**
+     * Run the flow over a stream of params, see {@link FlowStream}
+     */
+    protected <T, R> Flow.Publisher<R> stream(Flow.Publisher<T> source, Executor executor, int bufferSize) {
+        if (steps == null || steps.length == 0) {
+            throw new RuntimeException("processInstance node list is empty.");
+        }
+        return new FlowStream<>(this, source, executor, bufferSize);
+    }
+
+    /**
+     * Run the flow as a pipeline of per step pools, see {@link FlowPipeline}
+     */
+    protected FlowPipeline pipeline(int queueCapacity, int... threads) {
+        return new FlowPipeline(this, queueCapacity, threads);
+    }
+
+    Info[] getSteps() {
+        return steps;
+    }
+
+    FlowNodeManager getFlowNodeManager() {
+        return flowNodeManager;
+    }
+
+    /**
+     * Cache of the flow results, null when the builder did not configure one
+     */
+    public TtlCache<Object, Object> getResultCache() {
+        return resultCache != null ? resultCache.getCache() : null;
+    }
+
     public void stop() {
         ContextBus.get().stopProcess();
     }
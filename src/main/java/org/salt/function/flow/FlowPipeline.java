@@ -0,0 +1,236 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.salt.function.flow;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import org.salt.function.flow.context.ContextBus;
+import org.salt.function.flow.node.structure.FlowNodeStructure;
+import org.salt.function.flow.thread.TheadHelper;
+import org.salt.function.flow.util.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Staged execution of a flow across requests: every top level step runs on its own fixed size thread pool behind
+ * a bounded queue, so successive requests are in different steps at once instead of one thread carrying a request
+ * end to end. A full queue blocks the thread handing a request over, submitting included, until the stage
+ * catches up. Requests are independent, a stage with several threads may complete them out of order.
+ */
+public final class FlowPipeline implements AutoCloseable {
+
+    private final FlowInstance flowInstance;
+
+    private final List<Stage> stages;
+
+    FlowPipeline(FlowInstance flowInstance, int queueCapacity, int... threads) {
+        Info[] steps = flowInstance.getSteps();
+        if (steps == null || steps.length == 0) {
+            throw new RuntimeException("processInstance node list is empty.");
+        }
+        if (threads.length != 1 && threads.length != steps.length) {
+            throw new RuntimeException("pipeline threads must be given once or per step. steps:" + steps.length + ", threads:" + threads.length);
+        }
+        if (queueCapacity <= 0) {
+            throw new RuntimeException("queueCapacity must be positive. queueCapacity:" + queueCapacity);
+        }
+        this.flowInstance = flowInstance;
+        this.stages = new ArrayList<>(steps.length);
+        for (int i = 0; i < steps.length; i++) {
+            stages.add(new Stage(i, steps[i], threads.length == 1 ? threads[0] : threads[i], queueCapacity));
+        }
+    }
+
+    public <T, R> CompletableFuture<R> submit(T param) {
+        return submit(param, null, null);
+    }
+
+    public <T, R> CompletableFuture<R> submit(T param, Map<String, Object> transmitMap, Map<String, Object> conditionMap) {
+        Run<R> run = TheadHelper.fork().call(() -> {
+            ContextBus contextBus = ContextBus.create(param, flowInstance.getLayout());
+            if (transmitMap != null && !transmitMap.isEmpty()) {
+                transmitMap.forEach(contextBus::putTransmit);
+            }
+            if (conditionMap != null && !conditionMap.isEmpty()) {
+                conditionMap.forEach(contextBus::addCondition);
+            }
+            contextBus.setFlowResult(null);
+            return new Run<>(TheadHelper.capture(), contextBus);
+        });
+        stages.get(0).offer(run);
+        return run.future;
+    }
+
+    /**
+     * Queue depth and service time of every stage, in step order
+     */
+    public List<StageStats> getStats() {
+        return stages.stream().map(Stage::stats).toList();
+    }
+
+    /**
+     * Stop accepting requests and wait for the ones already submitted: stages are shut down in step order, each once
+     * the stage before it has terminated, so every request in flight can still be handed over to the next step
+     */
+    @Override
+    public void close() {
+        for (Stage stage : stages) {
+            stage.executor.shutdown();
+            try {
+                stage.executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    @Getter
+    @ToString
+    @AllArgsConstructor
+    public static class StageStats {
+        /**
+         * Ids or aliases of the nodes of the step
+         */
+        private final String name;
+        private final int threads;
+        private final int queueDepth;
+        private final int active;
+        private final long processed;
+        private final long meanServiceNanos;
+        /**
+         * Upper bound of the 99th percentile service time, -1 before the first request
+         */
+        private final long p99ServiceNanos;
+    }
+
+    private static class Run<R> {
+        final TheadHelper.Snapshot context;
+        final ContextBus contextBus;
+        final CompletableFuture<R> future = new CompletableFuture<>();
+
+        Run(TheadHelper.Snapshot context, ContextBus contextBus) {
+            this.context = context;
+            this.contextBus = contextBus;
+        }
+    }
+
+    private class Stage {
+        final int index;
+        final Info step;
+        final String name;
+        final int threads;
+        final ThreadPoolExecutor executor;
+        /**
+         * Requests queued or running in the stage, bounds the queue: a hand-over waits for a slot
+         */
+        final Semaphore slots;
+        final LatencyHistogram serviceTime = new LatencyHistogram();
+        final LongAdder serviceNanos = new LongAdder();
+        final LongAdder processed = new LongAdder();
+
+        Stage(int index, Info step, int threads, int queueCapacity) {
+            if (threads <= 0) {
+                throw new RuntimeException("pipeline threads must be positive. threads:" + threads);
+            }
+            this.index = index;
+            this.step = step;
+            this.name = step.getTarget() instanceof FlowNodeStructure<?> flowNodeStructure && flowNodeStructure.getNodeInfoList() != null
+                    ? flowNodeStructure.getNodeInfoList().stream().map(Info::getIdOrAlias).collect(Collectors.joining(","))
+                    : step.getIdOrAlias();
+            this.threads = threads;
+            String prefix = "flow-pipeline-" + flowInstance.getFlowId() + "-" + index + "-";
+            AtomicInteger count = new AtomicInteger();
+            this.slots = new Semaphore(queueCapacity + threads);
+            this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    (runnable, executor) -> {
+                        throw new RejectedExecutionException("pipeline is closed. flowId:" + flowInstance.getFlowId());
+                    });
+        }
+
+        <R> void offer(Run<R> run) {
+            try {
+                slots.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                run.future.completeExceptionally(e);
+                return;
+            }
+            try {
+                executor.execute(() -> {
+                    try {
+                        process(run);
+                    } finally {
+                        slots.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                slots.release();
+                run.future.completeExceptionally(e);
+            }
+        }
+
+        private <R> void process(Run<R> run) {
+            boolean ended;
+            long start = System.nanoTime();
+            try {
+                ended = run.context.call(() -> {
+                    flowInstance.getFlowNodeManager().execute(step.getTarget(), step);
+                    return flowInstance.isEnd(run.contextBus);
+                });
+            } catch (Throwable e) {
+                run.future.completeExceptionally(e);
+                return;
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                serviceTime.record(elapsed);
+                serviceNanos.add(elapsed);
+                processed.increment();
+            }
+            if (ended || index == stages.size() - 1) {
+                try {
+                    run.future.complete(run.context.call(() -> flowInstance.complete(run.contextBus)));
+                } catch (Throwable e) {
+                    run.future.completeExceptionally(e);
+                }
+            } else {
+                stages.get(index + 1).offer(run);
+            }
+        }
+
+        StageStats stats() {
+            long count = processed.sum();
+            return new StageStats(name, threads, executor.getQueue().size(), executor.getActiveCount(), count,
+                    count > 0 ? serviceNanos.sum() / count : 0, serviceTime.percentile(0.99));
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.salt.function.flow;
+
+import lombok.Getter;
+import org.salt.function.flow.util.TtlCache;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Flow result cache configured on the builder: the key is the user key of the param, the selected transmit entries
+ * and the condition map, since all of them can change what the flow returns
+ */
+class FlowResultCache {
+
+    private final Function<Object, Object> paramKey;
+
+    private final String[] transmitKeys;
+
+    @Getter
+    private final TtlCache<Object, Object> cache;
+
+    FlowResultCache(Function<Object, Object> paramKey, String[] transmitKeys, TtlCache<Object, Object> cache) {
+        this.paramKey = paramKey;
+        this.transmitKeys = transmitKeys;
+        this.cache = cache;
+    }
+
+    /**
+     * Key of an execution, null when the param key is null and the execution is not cached
+     */
+    Object key(Object param, Map<String, Object> transmitMap, Map<String, Object> conditionMap) {
+        Object key = paramKey.apply(param);
+        if (key == null) {
+            return null;
+        }
+        Object[] parts = new Object[transmitKeys.length + 2];
+        parts[0] = key;
+        for (int i = 0; i < transmitKeys.length; i++) {
+            parts[i + 1] = transmitMap != null ? transmitMap.get(transmitKeys[i]) : null;
+        }
+        parts[parts.length - 1] = conditionMap != null && !conditionMap.isEmpty() ? new HashMap<>(conditionMap) : null;
+        return Arrays.asList(parts);
+    }
+
+    /**
+     * Result cached for the key, null when absent or expired; every flow result is kept untyped in one cache
+     */
+    @SuppressWarnings("unchecked")
+    <R> R get(Object key) {
+        return (R) cache.get(key);
+    }
+
+    void put(Object key, Object result) {
+        if (result != null) {
+            cache.put(key, result);
+        }
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.salt.function.flow;
+
+import org.salt.function.flow.context.ContextBus;
+import org.salt.function.flow.thread.TheadHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streaming execution of a flow: every top level step is a stage with a bounded buffer, so records are in flight
+ * across different steps at once while each step still sees the records one at a time and in order.
+ * Stages are drained on the executor only while they have work and the next stage has room, no thread is held
+ * waiting; records are requested from the source as the first stage frees room and results are emitted on demand.
+ * Records whose run ends without a result, e.g. stopped or rolled back, are not emitted.
+ */
+final class FlowStream<T, R> implements Flow.Publisher<R> {
+
+    private final FlowInstance flowInstance;
+
+    private final Flow.Publisher<T> source;
+
+    private final Executor executor;
+
+    private final int bufferSize;
+
+    FlowStream(FlowInstance flowInstance, Flow.Publisher<T> source, Executor executor, int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new RuntimeException("bufferSize must be positive. bufferSize:" + bufferSize);
+        }
+        this.flowInstance = flowInstance;
+        this.source = source;
+        this.executor = executor;
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super R> subscriber) {
+        source.subscribe(new Pipeline(subscriber, TheadHelper.capture()));
+    }
+
+    private static class Run {
+        final TheadHelper.Snapshot context;
+        final ContextBus contextBus;
+        boolean ended;
+
+        Run(TheadHelper.Snapshot context, ContextBus contextBus) {
+            this.context = context;
+            this.contextBus = contextBus;
+        }
+    }
+
+    /**
+     * Subscribed to the source and subscription of the downstream subscriber, one per subscribe
+     */
+    private class Pipeline implements Flow.Subscriber<T>, Flow.Subscription {
+
+        private final Flow.Subscriber<? super R> downstream;
+
+        private final TheadHelper.Snapshot origin;
+
+        private final List<Stage> stages;
+
+        private final Sink sink;
+
+        private final AtomicLong requested = new AtomicLong();
+
+        private final AtomicBoolean terminated = new AtomicBoolean();
+
+        private volatile Flow.Subscription upstream;
+
+        private volatile boolean upstreamDone;
+
+        private volatile Throwable error;
+
+        private volatile boolean cancelled;
+
+        Pipeline(Flow.Subscriber<? super R> downstream, TheadHelper.Snapshot origin) {
+            this.downstream = downstream;
+            this.origin = origin;
+            Info[] steps = flowInstance.getSteps();
+            this.stages = new ArrayList<>(steps.length);
+            for (int i = 0; i < steps.length; i++) {
+                stages.add(new Stage(i, steps[i]));
+            }
+            this.sink = new Sink();
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            if (upstream != null) {
+                subscription.cancel();
+                return;
+            }
+            upstream = subscription;
+            downstream.onSubscribe(this);
+            subscription.request(bufferSize);
+        }
+
+        @Override
+        public void onNext(T item) {
+            Run run = origin.call(() -> TheadHelper.fork().call(() -> {
+                ContextBus contextBus = ContextBus.create(item, flowInstance.getLayout());
+                contextBus.setFlowResult(null);
+                return new Run(TheadHelper.capture(), contextBus);
+            }));
+            buffer(0).offer(run);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            fail(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            upstreamDone = true;
+            sink.schedule();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                fail(new IllegalArgumentException("request must be positive. n:" + n));
+                return;
+            }
+            requested.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+            sink.schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            upstream.cancel();
+        }
+
+        private void fail(Throwable throwable) {
+            if (error == null) {
+                error = throwable;
+            }
+            if (upstream != null) {
+                upstream.cancel();
+            }
+            sink.schedule();
+        }
+
+        private boolean stopped() {
+            return cancelled || error != null;
+        }
+
+        private Buffer buffer(int index) {
+            return index < stages.size() ? stages.get(index) : sink;
+        }
+
+        /**
+         * Room was freed in the buffer at index, let the producer of that buffer continue
+         */
+        private void freed(int index) {
+            if (index == 0) {
+                upstream.request(1);
+            } else {
+                stages.get(index - 1).schedule();
+            }
+        }
+
+        private abstract class Buffer {
+            final Queue<Run> queue = new ConcurrentLinkedQueue<>();
+            /**
+             * Records queued or being processed, so a record only leaves once it is in the next buffer
+             */
+            final AtomicInteger size = new AtomicInteger();
+            final AtomicInteger wip = new AtomicInteger();
+
+            void offer(Run run) {
+                size.incrementAndGet();
+                queue.offer(run);
+                schedule();
+            }
+
+            boolean hasRoom() {
+                return size.get() < bufferSize;
+            }
+
+            void schedule() {
+                if (wip.getAndIncrement() == 0) {
+                    executor.execute(this::drain);
+                }
+            }
+
+            private void drain() {
+                int missed = 1;
+                do {
+                    drainOnce();
+                    missed = wip.addAndGet(-missed);
+                } while (missed != 0);
+            }
+
+            abstract void drainOnce();
+        }
+
+        private class Stage extends Buffer {
+            final int index;
+            final Info step;
+
+            Stage(int index, Info step) {
+                this.index = index;
+                this.step = step;
+            }
+
+            @Override
+            void drainOnce() {
+                Buffer next = buffer(index + 1);
+                Run run;
+                while (!stopped() && next.hasRoom() && (run = queue.poll()) != null) {
+                    if (!run.ended) {
+                        Run current = run;
+                        try {
+                            run.ended = run.context.call(() -> {
+                                flowInstance.getFlowNodeManager().execute(step.getTarget(), step);
+                                return flowInstance.isEnd(current.contextBus);
+                            });
+                        } catch (Throwable e) {
+                            fail(e);
+                            return;
+                        }
+                    }
+                    next.offer(run);
+                    size.decrementAndGet();
+                    freed(index);
+                    if (upstreamDone) {
+                        sink.schedule();
+                    }
+                }
+            }
+        }
+
+        private class Sink extends Buffer {
+
+            @Override
+            void drainOnce() {
+                while (!terminated.get()) {
+                    if (cancelled) {
+                        return;
+                    }
+                    if (error != null) {
+                        if (terminated.compareAndSet(false, true)) {
+                            downstream.onError(error);
+                        }
+                        return;
+                    }
+                    Run run = requested.get() > 0 ? queue.poll() : null;
+                    if (run == null) {
+                        if (upstreamDone && queue.isEmpty() && idle() && terminated.compareAndSet(false, true)) {
+                            downstream.onComplete();
+                        }
+                        return;
+                    }
+                    R result;
+                    try {
+                        result = run.context.call(() -> flowInstance.complete(run.contextBus));
+                    } catch (Throwable e) {
+                        fail(e);
+                        continue;
+                    }
+                    size.decrementAndGet();
+                    freed(stages.size());
+                    if (result != null) {
+                        if (requested.get() != Long.MAX_VALUE) {
+                            requested.decrementAndGet();
+                        }
+                        downstream.onNext(result);
+                    }
+                }
+            }
+
+            private boolean idle() {
+                for (Stage stage : stages) {
+                    if (stage.size.get() > 0) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+    }
+}
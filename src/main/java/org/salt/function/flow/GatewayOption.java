@@ -0,0 +1,39 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.salt.function.flow;
+
+/**
+ * Behaviour switches passed to gateway builder methods along with the nodes, e.g.
+ * {@code concurrent(GatewayOption.CANCEL_ON_TIMEOUT, 200L, ReduceNode.class, MultiplyNode.class)}
+ */
+public enum GatewayOption {
+
+    /**
+     * On timeout interrupt the branches still running, record a TimeoutException for each of them
+     * and discard whatever they write afterwards; the gateway returns the branches that did complete
+     */
+    CANCEL_ON_TIMEOUT,
+
+    /**
+     * Once the gateway has its result, cancel the branches still running instead of leaving them to finish
+     * in the background
+     */
+    CANCEL_REMAINING,
+
+    /**
+     * Stop waiting as soon as a branch fails or stops / rolls back the flow, and cancel the other branches
+     */
+    FAIL_FAST
+}
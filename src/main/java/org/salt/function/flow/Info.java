@@ -17,13 +17,21 @@ package org.salt.function.flow;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 import org.apache.commons.lang3.StringUtils;
+import org.salt.function.flow.context.ContextLayout;
 import org.salt.function.flow.context.IContextBus;
 import org.salt.function.flow.node.FlowNode;
+import org.salt.function.flow.util.TtlCache;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.function.Predicate;
 
 import static java.util.random.RandomGeneratorFactory.all;
 
@@ -43,6 +51,63 @@ public class Info {
     private FlowNode<?, ?> flowNode;
     private Function<Object, ?> funNode;
 
+    /**
+     * Key of the node input for single-flight: while a call with a key is in flight,
+     * other calls of the same node with an equal key wait for its result instead of processing again
+     */
+    private Function<Object, Object> singleFlight;
+
+    /**
+     * Key of the node input for the result cache, results are served from {@link #cache} while fresh
+     */
+    private Function<Object, Object> cacheKey;
+
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private TtlCache<Object, Object> cache;
+
+    /**
+     * Ids of the node results this node consumes, a dag gateway starts the node once they are all available
+     */
+    private List<String> depends;
+
+    /**
+     * Ids of the node results this node reads instead of its input, see {@code FlowEngine.Builder#parallelize}
+     */
+    private List<String> reads;
+
+    /**
+     * Node resolved when the flow is built, null until resolved or when this info targets a sub flow
+     */
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private volatile FlowNode<?, ?> target;
+
+    /**
+     * Sub flow resolved when the flow is built
+     */
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private volatile FlowInstance targetFlow;
+
+    /**
+     * Layout of the flow this info was compiled into, and the result slot of its id or alias there
+     */
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private ContextLayout layout;
+
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private int slot;
+
+    /**
+     * Include expression compiled when the flow is built
+     */
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private Predicate<Map<String, Object>> condition;
+
     public String getId() {
         if (StringUtils.isNotEmpty(id)) {
             return id;
@@ -158,4 +223,54 @@ public class Info {
         this.output = output;
         return this;
     }
+
+    public Info cSingleFlight(Function<Object, Object> singleFlight) {
+        this.singleFlight = singleFlight;
+        return this;
+    }
+
+    /**
+     * Cache the node result per {@code cacheKey} for this reference; concurrent misses of a key share one call,
+     * a null result is not cached
+     */
+    public Info cCache(Function<Object, Object> cacheKey, long ttlMillis, int maxSize) {
+        this.cacheKey = cacheKey;
+        this.cache = new TtlCache<>(ttlMillis, maxSize);
+        return this;
+    }
+
+    /**
+     * Declare the results this node consumes by node id, class or sub flow, as read with {@code IContextBus.getResult}
+     */
+    public Info cDepends(Object... depends) {
+        this.depends = ids(this.depends, depends);
+        return this;
+    }
+
+    /**
+     * Declare the results this node reads, by node id, class or sub flow; the node does not use its input
+     * or {@code getPreResult}, so it may run in parallel with the steps before it
+     */
+    public Info cReads(Object... reads) {
+        this.reads = ids(this.reads, reads);
+        return this;
+    }
+
+    private static List<String> ids(List<String> ids, Object[] objects) {
+        if (ids == null) {
+            ids = new ArrayList<>();
+        }
+        for (Object o : objects) {
+            if (o instanceof Class) {
+                ids.add(((Class<?>) o).getName());
+            } else if (o instanceof String) {
+                ids.add((String) o);
+            } else if (o instanceof FlowInstance) {
+                ids.add(((FlowInstance) o).getFlowId());
+            } else {
+                throw new RuntimeException("unknown type");
+            }
+        }
+        return ids;
+    }
 }
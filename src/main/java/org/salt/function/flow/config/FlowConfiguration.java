@@ -29,6 +29,9 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.DependsOn;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 
 @Slf4j
@@ -45,6 +48,8 @@ public class FlowConfiguration {
     @Value("${salt.function.flow.threadpool.keepAlive:60}")
     private int keepAlive;
 
+    private static final String THREAD_POOL_MODE = "salt.function.flow.threadpool.mode";
+
     @Bean
     public FlowNodeManager register() {
         return new FlowNodeManager();
@@ -57,6 +62,7 @@ public class FlowConfiguration {
 
     @Bean
     @ConditionalOnMissingBean(name = "flowThreadPool")
+    @ConditionalOnProperty(value = THREAD_POOL_MODE, havingValue = "platform", matchIfMissing = true)
     public ThreadPoolTaskExecutor flowThreadPool() {
         ThreadPoolTaskExecutor threadPoolTaskExecutor = new ThreadPoolTaskExecutor();
         threadPoolTaskExecutor.setCorePoolSize(coreSize);
@@ -72,10 +78,35 @@ public class FlowConfiguration {
         return threadPoolTaskExecutor;
     }
 
+    /**
+     * One virtual thread per branch (JDK 21+), branches blocked on I/O do not hold a pool thread
+     */
+    @Bean
+    @ConditionalOnMissingBean(name = "flowVirtualThreadPool")
+    @ConditionalOnProperty(value = THREAD_POOL_MODE, havingValue = "virtual")
+    public ExecutorService flowVirtualThreadPool() {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "thread-virtual-flow-", 0L);
+            ThreadFactory threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, threadFactory);
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("threadpool mode virtual requires JDK 21 or later", e);
+        }
+    }
+
     @Bean
-    @DependsOn({"extensionScanner", "flowThreadPool"})
+    @DependsOn({"extensionScanner"})
     public FlowEngine flowEngine(FlowNodeManager flowNodeManager, @Autowired(required = false) IFlowInit flowInit,
-                                 @Qualifier("flowThreadPool") ThreadPoolTaskExecutor flowThreadPool) {
+                                 @Autowired(required = false) @Qualifier("flowThreadPool") ThreadPoolTaskExecutor flowThreadPool,
+                                 @Autowired(required = false) @Qualifier("flowVirtualThreadPool") ExecutorService flowVirtualThreadPool) {
+        if (flowVirtualThreadPool != null) {
+            return new FlowEngine(flowNodeManager, flowInit, flowVirtualThreadPool);
+        }
+        if (flowThreadPool == null) {
+            throw new RuntimeException("unknown " + THREAD_POOL_MODE + ", expected platform or virtual");
+        }
         return new FlowEngine(flowNodeManager, flowInit, flowThreadPool);
     }
 }
@@ -15,14 +15,15 @@
 package org.salt.function.flow.context;
 
 import lombok.Builder;
-import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import org.salt.function.flow.Info;
 import org.salt.function.flow.node.FlowNode;
 import org.salt.function.flow.thread.TheadHelper;
 import org.salt.function.flow.util.FlowUtil;
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 @Builder
 @Slf4j
@@ -30,15 +31,22 @@ public class ContextBus implements IContextBus {
 
     private static String LAST_RESULT_KEY = "thead_last_result_key";
     private static String RESULT_KEY = "thead_result_key";
-    private static String NODE_RUN_ID_KEY = "node_run_id_key_%s";
     private static String LAST_RUN_ID_KEY = "last_run_id_key";
     private static String NODE_ID_OR_ALIAS_KEY = "node_id_or_alias_key";
+    private static String LOOP_INDEX_KEY = "loop_index_key";
 
     /**
-     * ContextBus id
+     * Kinds of per node values stored in the slot array, each kind takes layout.size() consecutive slots
      */
-    @Getter
-    private String id;
+    private static final int RESULT = 0;
+    private static final int EXCEPTION = 1;
+    private static final int RUN_ID = 2;
+    private static final int KINDS = 3;
+
+    /**
+     * ContextBus id, created on first access
+     */
+    private volatile String id;
 
     /**
      * Flow call parameters
@@ -51,19 +59,34 @@ public class ContextBus implements IContextBus {
     private Object result;
 
     /**
-     * Store additional transmission context information
+     * Store additional transmission context information, created on first put
+     */
+    private volatile ConcurrentMap<String, Object> transmitMap;
+
+    /**
+     * Result slot layout of the executing flow
      */
-    private ConcurrentMap<String, Object> transmitMap;
+    private ContextLayout layout;
 
     /**
-     * Store the returned results of execution nodes
+     * Store the result, exception and run id of execution nodes known to the layout, indexed by kind and slot
      */
-    private ConcurrentMap<String, Object> nodeResultMap;
+    private AtomicReferenceArray<Object> nodeSlots;
 
     /**
-     * Store the exception information of each node (asynchronous execution node)
+     * Store the returned results of execution nodes outside the layout, created on first put
      */
-    private ConcurrentMap<String, Exception> nodeExceptionMap;
+    private volatile ConcurrentMap<String, Object> nodeResultMap;
+
+    /**
+     * Store the exception information of each node outside the layout, created on first put
+     */
+    private volatile ConcurrentMap<String, Exception> nodeExceptionMap;
+
+    /**
+     * Store the run id of each node outside the layout, created on first put
+     */
+    private volatile ConcurrentMap<String, String> nodeRunIdMap;
 
     /**
      * Store the parameters involved in condition judgment, initially flow param
@@ -71,9 +94,9 @@ public class ContextBus implements IContextBus {
     private ConcurrentMap<String, Object> conditionMap;
 
     /**
-     * Flow execution instance ID
+     * Flow execution instance ID, created on first access
      */
-    private String runtimeId;
+    private volatile String runtimeId;
 
     /**
      * Flow stop flag
@@ -85,10 +108,20 @@ public class ContextBus implements IContextBus {
      */
     private boolean rollbackFlag;
     /**
-     * Executed node list
+     * Executed node list, created on first executed node
      */
     private Deque<FlowNode<?,?>> rollbackList;
 
+    public String getId() {
+        if (id == null) {
+            synchronized (this) {
+                if (id == null) {
+                    id = "context-bus-" + FlowUtil.id();
+                }
+            }
+        }
+        return id;
+    }
 
     public <P> P getFlowParam() {
         return (P) this.param;
@@ -104,12 +137,19 @@ public class ContextBus implements IContextBus {
 
     @Override
     public <P> void putTransmit(String key, P content) {
+        if (transmitMap == null) {
+            synchronized (this) {
+                if (transmitMap == null) {
+                    transmitMap = new ConcurrentHashMap<>();
+                }
+            }
+        }
         transmitMap.put(key, content);
     }
 
     @Override
     public <P> P getTransmit(String key) {
-        return (P) transmitMap.get(key);
+        return transmitMap != null ? (P) transmitMap.get(key) : null;
     }
 
     @Override
@@ -117,8 +157,8 @@ public class ContextBus implements IContextBus {
         if (key == null || value == null) {
             return;
         }
-        if (conditionMap.containsKey(key)) {
-            log.debug("process addCondition param loop. key:{}, value:{}, traceId:{}", key, value, runtimeId);
+        if (log.isDebugEnabled() && conditionMap.containsKey(key)) {
+            log.debug("process addCondition param loop. key:{}, value:{}, traceId:{}", key, value, getRuntimeId());
         }
         conditionMap.put(key, value);
     }
@@ -129,20 +169,67 @@ public class ContextBus implements IContextBus {
 
     @Override
     public <P> P getResult(String nodeId) {
-        return (P) nodeResultMap.get(nodeId);
+        int slot = layout.indexOf(nodeId);
+        if (slot >= 0) {
+            return (P) nodeSlots.get(index(RESULT, slot));
+        }
+        return nodeResultMap != null ? (P) nodeResultMap.get(nodeId) : null;
     }
 
     @Override
     public <P> P getResult(Class<?> clazz) {
-        return (P) nodeResultMap.get(clazz.getName());
+        return getResult(clazz.getName());
     }
 
     public <P> void putResult(String nodeId, P result) {
-        nodeResultMap.put(nodeId, result);
+        putResult(layout.indexOf(nodeId), nodeId, result);
+    }
+
+    public <P> void putResult(Info info, P result) {
+        putResult(slotOf(info), info.getIdOrAlias(), result);
+    }
+
+    public <P> void putResult(ContextLayout layout, int slot, String nodeId, P result) {
+        putResult(slotOf(layout, slot, nodeId), nodeId, result);
+    }
+
+    private <P> void putResult(int slot, String nodeId, P result) {
+        if (slot >= 0) {
+            nodeSlots.set(index(RESULT, slot), result);
+        } else {
+            if (nodeResultMap == null) {
+                synchronized (this) {
+                    if (nodeResultMap == null) {
+                        nodeResultMap = new ConcurrentHashMap<>();
+                    }
+                }
+            }
+            nodeResultMap.put(nodeId, result);
+        }
     }
 
     public void removeResult(String nodeId) {
-        nodeResultMap.remove(nodeId);
+        int slot = layout.indexOf(nodeId);
+        if (slot >= 0) {
+            nodeSlots.set(index(RESULT, slot), null);
+        } else if (nodeResultMap != null) {
+            nodeResultMap.remove(nodeId);
+        }
+    }
+
+    /**
+     * Slots compiled against this bus layout are used as is, others (e.g. sub flow nodes) are looked up by id
+     */
+    private int slotOf(ContextLayout layout, int slot, String nodeId) {
+        return layout == this.layout ? slot : this.layout.indexOf(nodeId);
+    }
+
+    private int slotOf(Info info) {
+        return slotOf(info.getLayout(), info.getSlot(), info.getIdOrAlias());
+    }
+
+    private int index(int kind, int slot) {
+        return kind * layout.size() + slot;
     }
 
     public static void clean() {
@@ -150,7 +237,7 @@ public class ContextBus implements IContextBus {
     }
 
     public <P> P getResult(String nodeId, long timeout) throws InterruptedException, ExecutionException, TimeoutException {
-        Object result = nodeResultMap.get(nodeId);
+        Object result = getResult(nodeId);
         if (result instanceof Future) {
             return ((Future<P>) result).get(timeout, TimeUnit.MILLISECONDS);
         }
@@ -159,25 +246,55 @@ public class ContextBus implements IContextBus {
 
     @Override
     public Exception getException(String nodeId) {
-        return nodeExceptionMap.get(nodeId);
+        int slot = layout.indexOf(nodeId);
+        if (slot >= 0) {
+            return (Exception) nodeSlots.get(index(EXCEPTION, slot));
+        }
+        return nodeExceptionMap != null ? nodeExceptionMap.get(nodeId) : null;
     }
 
     @Override
     public Exception getException(Class<?> clazz) {
-        return nodeExceptionMap.get(clazz.getName());
+        return getException(clazz.getName());
     }
 
     public void putException(String nodeId, Exception e) {
+        putException(layout.indexOf(nodeId), nodeId, e);
+    }
+
+    public void putException(Info info, Exception e) {
+        putException(slotOf(info), info.getIdOrAlias(), e);
+    }
+
+    private void putException(int slot, String nodeId, Exception e) {
         if (e instanceof org.salt.function.flow.FlowControlException) {
             log.debug("node flow control signal. nodeId:{}, type:{}", nodeId, e.getClass().getSimpleName());
         } else {
             log.warn("node exception. nodeId:{}, exception:", nodeId, e);
         }
-        nodeExceptionMap.put(nodeId, e);
+        if (slot >= 0) {
+            nodeSlots.set(index(EXCEPTION, slot), e);
+        } else {
+            if (nodeExceptionMap == null) {
+                synchronized (this) {
+                    if (nodeExceptionMap == null) {
+                        nodeExceptionMap = new ConcurrentHashMap<>();
+                    }
+                }
+            }
+            nodeExceptionMap.put(nodeId, e);
+        }
     }
 
     @Override
     public String getRuntimeId() {
+        if (runtimeId == null) {
+            synchronized (this) {
+                if (runtimeId == null) {
+                    runtimeId = FlowUtil.id();
+                }
+            }
+        }
         return runtimeId;
     }
 
@@ -191,19 +308,86 @@ public class ContextBus implements IContextBus {
     }
 
     public ContextBus copy() {
+        AtomicReferenceArray<Object> slots = new AtomicReferenceArray<>(nodeSlots.length());
+        for (int i = 0; i < slots.length(); i++) {
+            slots.set(i, nodeSlots.get(i));
+        }
         return ContextBus.builder()
-                .id("context-bus-" + UUID.randomUUID().toString().replaceAll("-", ""))
                 .param(param)
                 .conditionMap(new ConcurrentHashMap<>(conditionMap))
-                .nodeResultMap(new ConcurrentHashMap<>(nodeResultMap))
-                .nodeExceptionMap(new ConcurrentHashMap<>(nodeExceptionMap))
-                .transmitMap(new ConcurrentHashMap<>(transmitMap))
-                .runtimeId(runtimeId)
-                .rollbackList(new LinkedList<>())
+                .layout(layout)
+                .nodeSlots(slots)
+                .nodeResultMap(nodeResultMap != null ? new ConcurrentHashMap<>(nodeResultMap) : null)
+                .nodeExceptionMap(nodeExceptionMap != null ? new ConcurrentHashMap<>(nodeExceptionMap) : null)
+                .nodeRunIdMap(nodeRunIdMap != null ? new ConcurrentHashMap<>(nodeRunIdMap) : null)
+                .transmitMap(transmitMap != null ? new ConcurrentHashMap<>(transmitMap) : null)
+                .runtimeId(getRuntimeId())
                 .build();
     }
 
+    /**
+     * Merge what a branch running on a copy of this bus wrote after the copy {@code base} was taken: results,
+     * exceptions, run ids, conditions and transmit entries that differ from the base, the stop and rollback flags and
+     * the nodes the branch executed, for rollback
+     */
+    public synchronized void merge(ContextBus branch, ContextBus base) {
+        for (int i = 0; i < nodeSlots.length(); i++) {
+            Object value = branch.nodeSlots.get(i);
+            if (value != base.nodeSlots.get(i)) {
+                nodeSlots.set(i, value);
+            }
+        }
+        nodeResultMap = merge(nodeResultMap, branch.nodeResultMap, base.nodeResultMap);
+        nodeExceptionMap = merge(nodeExceptionMap, branch.nodeExceptionMap, base.nodeExceptionMap);
+        nodeRunIdMap = merge(nodeRunIdMap, branch.nodeRunIdMap, base.nodeRunIdMap);
+        transmitMap = merge(transmitMap, branch.transmitMap, base.transmitMap);
+        merge(conditionMap, branch.conditionMap, base.conditionMap);
+        if (branch.stopFlag) {
+            stopFlag = true;
+        }
+        if (branch.isRollbackProcess()) {
+            rollbackFlag = true;
+        }
+        List<FlowNode<?,?>> executed = branch.executed();
+        if (!executed.isEmpty()) {
+            if (rollbackList == null) {
+                rollbackList = new ArrayDeque<>();
+            }
+            executed.forEach(rollbackList::push);
+        }
+    }
+
+    private static <V> ConcurrentMap<String, V> merge(ConcurrentMap<String, V> target, Map<String, V> branch, Map<String, V> base) {
+        if (branch == null) {
+            return target;
+        }
+        for (Map.Entry<String, V> entry : branch.entrySet()) {
+            if (base == null || base.get(entry.getKey()) != entry.getValue()) {
+                if (target == null) {
+                    target = new ConcurrentHashMap<>();
+                }
+                target.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return target;
+    }
+
+    /**
+     * Nodes registered for rollback, in execution order
+     */
+    private synchronized List<FlowNode<?,?>> executed() {
+        List<FlowNode<?,?>> executed = new ArrayList<>();
+        if (rollbackList != null) {
+            rollbackList.descendingIterator().forEachRemaining(executed::add);
+        }
+        return executed;
+    }
+
     public static ContextBus create(Object param) {
+        return create(param, ContextLayout.EMPTY);
+    }
+
+    public static ContextBus create(Object param, ContextLayout layout) {
         ConcurrentMap<String, Object> conditionMap = new ConcurrentHashMap<>();
         try {
             if (param instanceof Map) {
@@ -222,14 +406,10 @@ public class ContextBus implements IContextBus {
             throw new RuntimeException("param to conditionMap error");
         }
         ContextBus contextBus = ContextBus.builder()
-                .id("context-bus-" + UUID.randomUUID().toString().replaceAll("-", ""))
                 .param(param)
                 .conditionMap(conditionMap)
-                .nodeResultMap(new ConcurrentHashMap<>())
-                .nodeExceptionMap(new ConcurrentHashMap<>())
-                .transmitMap(new ConcurrentHashMap<>())
-                .runtimeId(FlowUtil.id())
-                .rollbackList(new LinkedList<>())
+                .layout(layout)
+                .nodeSlots(new AtomicReferenceArray<>(KINDS * layout.size()))
                 .build();
         ContextBus.clean();
         contextBus.putPreResult(param);
@@ -253,6 +433,9 @@ public class ContextBus implements IContextBus {
     }
 
     public synchronized void roolbackAll() {
+        if (rollbackList == null) {
+            return;
+        }
         for(int i=rollbackList.size()-1; i>=0; i--) {
             FlowNode<?,?> execNode = rollbackList.pop();
             try {
@@ -271,6 +454,9 @@ public class ContextBus implements IContextBus {
             }
             return true;
         } else {
+            if (rollbackList == null) {
+                rollbackList = new ArrayDeque<>();
+            }
             rollbackList.push(flowNode);
             return false;
         }
@@ -288,10 +474,31 @@ public class ContextBus implements IContextBus {
     }
 
     public String getRunId(String nodeId) {
-        return (String) nodeResultMap.get(String.format(NODE_RUN_ID_KEY, nodeId));
+        int slot = layout.indexOf(nodeId);
+        if (slot >= 0) {
+            return (String) nodeSlots.get(index(RUN_ID, slot));
+        }
+        return nodeRunIdMap != null ? nodeRunIdMap.get(nodeId) : null;
     }
     public void putRunId(String nodeId, String runId) {
-        nodeResultMap.put(String.format(NODE_RUN_ID_KEY, nodeId), runId);
+        putRunId(layout.indexOf(nodeId), nodeId, runId);
+    }
+    public void putRunId(Info info, String runId) {
+        putRunId(slotOf(info), info.getIdOrAlias(), runId);
+    }
+    private void putRunId(int slot, String nodeId, String runId) {
+        if (slot >= 0) {
+            nodeSlots.set(index(RUN_ID, slot), runId);
+        } else {
+            if (nodeRunIdMap == null) {
+                synchronized (this) {
+                    if (nodeRunIdMap == null) {
+                        nodeRunIdMap = new ConcurrentHashMap<>();
+                    }
+                }
+            }
+            nodeRunIdMap.put(nodeId, runId);
+        }
     }
 
     public List<String> getPreRunIds() {
@@ -300,4 +507,12 @@ public class ContextBus implements IContextBus {
     public void setPreRunIds(List<String> runIds) {
         TheadHelper.putThreadLocal(LAST_RUN_ID_KEY, runIds);
     }
+
+    @Override
+    public Integer getLoopIndex() {
+        return TheadHelper.getThreadLocal(LOOP_INDEX_KEY);
+    }
+    public void setLoopIndex(Integer index) {
+        TheadHelper.putThreadLocal(LOOP_INDEX_KEY, index);
+    }
 }
@@ -0,0 +1,56 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.salt.function.flow.context;
+
+import java.util.*;
+
+/**
+ * Slot layout of a compiled flow: every node id or alias the flow can write a result for
+ * gets a fixed integer slot, so the ContextBus stores those results in an array.
+ */
+public final class ContextLayout {
+
+    public static final ContextLayout EMPTY = new ContextLayout(Collections.emptyList());
+
+    private final List<String> ids;
+
+    private final Map<String, Integer> slots;
+
+    public ContextLayout(Collection<String> ids) {
+        Map<String, Integer> slots = new HashMap<>();
+        List<String> idList = new ArrayList<>();
+        for (String id : ids) {
+            if (id != null && !slots.containsKey(id)) {
+                slots.put(id, idList.size());
+                idList.add(id);
+            }
+        }
+        this.ids = Collections.unmodifiableList(idList);
+        this.slots = Collections.unmodifiableMap(slots);
+    }
+
+    public int indexOf(String id) {
+        Integer slot = slots.get(id);
+        return slot != null ? slot : -1;
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    public List<String> getIds() {
+        return ids;
+    }
+}
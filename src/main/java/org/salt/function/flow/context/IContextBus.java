@@ -98,4 +98,11 @@ public interface IContextBus {
      * Get the execution result of the last node, which may return null
      */
     List<String> getPreRunIds();
+
+    /**
+     * Get the index of the loop iteration being executed, null outside a loop
+     */
+    default Integer getLoopIndex() {
+        return null;
+    }
 }
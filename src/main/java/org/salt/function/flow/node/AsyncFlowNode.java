@@ -0,0 +1,44 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.salt.function.flow.node;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Node backed by an asynchronous client: under {@code FlowEngine.executeAsync} the flow is suspended while the stage
+ * is pending and resumes on a flow thread when it completes, so no thread waits on the I/O.
+ * Under {@code FlowEngine.execute} the calling thread waits for the stage.
+ */
+public abstract class AsyncFlowNode<O, I> extends FlowNode<O, I> {
+
+    public abstract CompletionStage<O> processAsync(I input);
+
+    @Override
+    public O process(I input) {
+        CompletionStage<O> stage = processAsync(input);
+        if (stage == null) {
+            return null;
+        }
+        try {
+            return stage.toCompletableFuture().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+}
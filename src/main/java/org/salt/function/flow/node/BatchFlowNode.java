@@ -0,0 +1,36 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.salt.function.flow.node;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Node that can process the inputs of several flow runs in one call, see {@code FlowEngine.executeBatch}.
+ * Outside a batch run, e.g. inside a gateway or through {@code FlowEngine.execute}, each input is processed as a batch of one.
+ */
+public abstract class BatchFlowNode<O, I> extends FlowNode<O, I> {
+
+    /**
+     * Process all inputs at once, returning one result per input in the same order
+     */
+    public abstract List<O> processBatch(List<I> inputs);
+
+    @Override
+    public O process(I input) {
+        List<O> outputs = processBatch(Collections.singletonList(input));
+        return outputs != null && !outputs.isEmpty() ? outputs.get(0) : null;
+    }
+}
@@ -14,19 +14,34 @@
 
 package org.salt.function.flow.node.register;
 
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.salt.function.flow.Info;
 import org.salt.function.flow.context.ContextBus;
+import org.salt.function.flow.node.AsyncFlowNode;
+import org.salt.function.flow.node.BatchFlowNode;
 import org.salt.function.flow.node.FlowNode;
 import org.salt.function.flow.node.structure.FlowNodeStructure;
+import org.salt.function.flow.thread.CancelToken;
+import org.salt.function.flow.thread.TheadHelper;
 import org.salt.function.flow.util.FlowUtil;
+import org.salt.function.flow.util.LatencyHistogram;
+import org.salt.function.flow.util.TtlCache;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 
 @Data
 @Slf4j
@@ -37,6 +52,31 @@ public class FlowNodeManager {
 
     private List<String> resultToConditionType = List.of("Map");
 
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private Map<String, NodeBatcher<?, ?>> nodeBatcherMap = new HashMap<>();
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final SingleFlight singleFlight = new SingleFlight();
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private Map<String, TtlCache<Object, Object>> nodeCacheMap = new HashMap<>();
+
+    /**
+     * Observed latencies in microseconds per node id, shared by every gateway that hedges on the node
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final Map<String, LatencyHistogram> nodeLatencyMap = new ConcurrentHashMap<>();
+
+    /**
+     * Executor an async node resumes the flow on when its stage completes later, on the completing thread if null
+     */
+    @Getter(AccessLevel.NONE)
+    private Executor resumeExecutor;
+
     protected void doRegistration(FlowNode<?,?> flowNode) {
         if (StringUtils.isEmpty(flowNode.getNodeId())) {
             throw new RuntimeException("nodeId or extConfig must not be all null ");
@@ -47,6 +87,28 @@ public class FlowNodeManager {
         flowNodeMap.put(flowNode.getNodeId(), flowNode);
     }
 
+    protected <O, I> void doBatchRegistration(BatchFlowNode<O, I> flowNode, long batchWindow, int batchSize) {
+        nodeBatcherMap.put(flowNode.getNodeId(), new NodeBatcher<>(flowNode, batchWindow, batchSize));
+    }
+
+    protected void doCacheRegistration(FlowNode<?, ?> flowNode, long cacheTtl, int cacheSize) {
+        nodeCacheMap.put(flowNode.getNodeId(), new TtlCache<>(cacheTtl, cacheSize));
+    }
+
+    /**
+     * Result cache of a node registered with a cache ttl, null if the node is not cached
+     */
+    public TtlCache<Object, Object> getNodeCache(String nodeId) {
+        return nodeCacheMap.get(nodeId);
+    }
+
+    /**
+     * Latency histogram of a node, created on first use
+     */
+    public LatencyHistogram getNodeLatency(String nodeId) {
+        return nodeLatencyMap.computeIfAbsent(nodeId, id -> new LatencyHistogram());
+    }
+
     public FlowNode<?,?> getIFlowNode(String nodeId) {
         return flowNodeMap.get(nodeId);
     }
@@ -62,55 +124,313 @@ public class FlowNodeManager {
     }
 
     public <O, I> O execute(FlowNode<O, I> flowNode, Info info) {
-        if (flowNode != null) {
-
+        if (flowNode != null && !CancelToken.cancelled()) {
             ContextBus contextBus = (ContextBus) ContextBus.get();
-
-            String nodeIdOrAlias = flowNode.getNodeId();
-            if (info != null) {
-                nodeIdOrAlias = info.getIdOrAlias();
+            String runId = start(contextBus, flowNode, info);
+            I input = input(contextBus, info);
+            CacheLoad cacheLoad = cacheLoad(flowNode, info, input);
+            O cached = cached(cacheLoad);
+            if (cached != null) {
+                return finish(contextBus, flowNode, info, runId, cached, false);
             }
+            return finish(contextBus, flowNode, info, runId, process(flowNode, info, input, cacheLoad), true);
+        }
+        return null;
+    }
 
-            contextBus.setNodeIdOrAlias(nodeIdOrAlias);
-            String runId = FlowUtil.id();
-            contextBus.putRunId(nodeIdOrAlias, runId);
-
-            I input = ContextBus.get().getPreResult();
-            if (info != null && info.getInput() != null) {
-                input = (I) info.getInput().apply(input);
+    /**
+     * Same bookkeeping as {@link #execute(FlowNode, Info)}, gateways fan out and in through continuations
+     * instead of blocking the calling thread
+     */
+    public <O, I> CompletableFuture<O> executeAsync(FlowNode<O, I> flowNode, Info info) {
+        if (flowNode == null || CancelToken.cancelled()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        ContextBus contextBus = (ContextBus) ContextBus.get();
+        TheadHelper.Snapshot snapshot = TheadHelper.capture();
+        String runId = start(contextBus, flowNode, info);
+        CompletableFuture<O> future;
+        try {
+            I input = input(contextBus, info);
+            if (flowNode instanceof FlowNodeStructure<?> flowNodeStructure) {
+                future = cast(flowNodeStructure.processAsync(input));
+            } else {
+                CacheLoad cacheLoad = cacheLoad(flowNode, info, input);
+                O cached = cached(cacheLoad);
+                if (cached != null) {
+                    return CompletableFuture.completedFuture(finish(contextBus, flowNode, info, runId, cached, false));
+                }
+                if (flowNode instanceof AsyncFlowNode) {
+                    future = processAsync((AsyncFlowNode<O, I>) flowNode, info, input, cacheLoad);
+                } else {
+                    future = CompletableFuture.completedFuture(process(flowNode, info, input, cacheLoad));
+                }
             }
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return future.thenApply(result -> snapshot.call(() -> finish(contextBus, flowNode, info, runId, result, true)));
+    }
+
+    /**
+     * Run a node for several flow runs at once, each run's context is installed in turn to read its input and to
+     * publish its result, so every run sees the same bookkeeping as {@link #execute(FlowNode, Info)};
+     * a batch node is processed once for all runs, a gateway decides how to spread its branches
+     */
+    public void executeBatch(FlowNode<?, ?> flowNode, Info info, List<TheadHelper.Snapshot> contexts) {
+        if (flowNode instanceof BatchFlowNode<?, ?> batchFlowNode) {
+            processBatch(batchFlowNode, info, contexts);
+        } else if (flowNode instanceof FlowNodeStructure<?> flowNodeStructure) {
+            processBatch(flowNodeStructure, info, contexts);
+        } else {
+            contexts.forEach(context -> context.call(() -> execute(flowNode, info)));
+        }
+    }
 
-            O result = flowNode.process(input);
+    private <O, I> void processBatch(BatchFlowNode<O, I> flowNode, Info info, List<TheadHelper.Snapshot> contexts) {
+        Batch<I> batch = startBatch(flowNode, info, contexts);
+        if (batch.contexts.isEmpty()) {
+            return;
+        }
+        List<O> outputs = flowNode.processBatch(batch.inputs);
+        if (outputs == null || outputs.size() != batch.inputs.size()) {
+            throw new RuntimeException("processBatch must return one result per input. nodeId:" + flowNode.getNodeId());
+        }
+        finishBatch(flowNode, info, batch, outputs);
+    }
 
-            if (result != null) {
+    private <O> void processBatch(FlowNodeStructure<O> flowNode, Info info, List<TheadHelper.Snapshot> contexts) {
+        Batch<Object> batch = startBatch(flowNode, info, contexts);
+        if (batch.contexts.isEmpty()) {
+            return;
+        }
+        finishBatch(flowNode, info, batch, flowNode.processBatch(batch.inputs, batch.contexts));
+    }
 
-                if (info != null && info.getOutput() != null) {
-                    contextBus.putResult(nodeIdOrAlias, info.getOutput().apply(result));
-                } else {
-                    contextBus.putResult(nodeIdOrAlias, result);
+    private <I> Batch<I> startBatch(FlowNode<?, I> flowNode, Info info, List<TheadHelper.Snapshot> contexts) {
+        Batch<I> batch = new Batch<>(contexts.size());
+        for (TheadHelper.Snapshot context : contexts) {
+            context.call(() -> {
+                if (!CancelToken.cancelled()) {
+                    ContextBus contextBus = (ContextBus) ContextBus.get();
+                    batch.contexts.add(context);
+                    batch.contextBuses.add(contextBus);
+                    batch.runIds.add(start(contextBus, flowNode, info));
+                    batch.inputs.add(input(contextBus, info));
                 }
+                return null;
+            });
+        }
+        return batch;
+    }
+
+    private <O> void finishBatch(FlowNode<O, ?> flowNode, Info info, Batch<?> batch, List<O> outputs) {
+        for (int i = 0; i < batch.contexts.size(); i++) {
+            ContextBus contextBus = batch.contextBuses.get(i);
+            String runId = batch.runIds.get(i);
+            O output = outputs.get(i);
+            batch.contexts.get(i).call(() -> finish(contextBus, flowNode, info, runId, output, true));
+        }
+    }
+
+    private static class Batch<I> {
+        final List<TheadHelper.Snapshot> contexts;
+        final List<ContextBus> contextBuses;
+        final List<String> runIds;
+        final List<I> inputs;
+
+        Batch(int size) {
+            contexts = new ArrayList<>(size);
+            contextBuses = new ArrayList<>(size);
+            runIds = new ArrayList<>(size);
+            inputs = new ArrayList<>(size);
+        }
+    }
+
+    /**
+     * Cache and key of a call through the info, or else through the node registration, null when not cached
+     */
+    private CacheLoad cacheLoad(FlowNode<?, ?> flowNode, Info info, Object input) {
+        TtlCache<Object, Object> cache = cache(flowNode, info);
+        Object cacheKey = cache != null ? cacheKey(info, input) : null;
+        return cacheKey != null ? new CacheLoad(cache, cacheKey) : null;
+    }
 
-                contextBus.putPreResult(result);
-                contextBus.setFlowResult(result);
-                contextBus.setPreRunIds(List.of(runId));
-
-                if (result instanceof Map && resultToConditionType.contains("Map")) {
-                    ((Map<String, Object>) result).forEach(contextBus::addCondition);
-                } else if (FlowUtil.isPlainObject(result) && resultToConditionType.contains("Object")) {
-                    FlowUtil.toMap(result).forEach(contextBus::addCondition);
-                } else if (FlowUtil.isPlainObject(result) && resultToConditionType.contains(result.getClass().getSimpleName())) {
-                    FlowUtil.toMap(result).forEach(contextBus::addCondition);
-                } else if (FlowUtil.isBaseType(result) && resultToConditionType.contains(result.getClass().getSimpleName())) {
-                    contextBus.addCondition(nodeIdOrAlias, result);
+    /**
+     * Cached results are served without calling the node, so the node is not registered for rollback either
+     */
+    private <O> O cached(CacheLoad cacheLoad) {
+        return cacheLoad != null ? cast(cacheLoad.cache().get(cacheLoad.key())) : null;
+    }
+
+    /**
+     * Call the node on a cache miss, concurrent misses of a key share one call, a null result is not cached
+     */
+    private <O, I> O process(FlowNode<O, I> flowNode, Info info, I input, CacheLoad cacheLoad) {
+        if (cacheLoad == null) {
+            return processSingleFlight(flowNode, info, input);
+        }
+        return singleFlight.execute(flowNode.getNodeId(), cacheLoad, () -> {
+            O loaded = processSingleFlight(flowNode, info, input);
+            if (loaded != null) {
+                cacheLoad.cache().put(cacheLoad.key(), loaded);
+            }
+            return loaded;
+        });
+    }
+
+    /**
+     * Same as {@link #process(FlowNode, Info, Object, CacheLoad)} for an async node, the flow resumes once its stage completes
+     */
+    private <O, I> CompletableFuture<O> processAsync(AsyncFlowNode<O, I> flowNode, Info info, I input, CacheLoad cacheLoad) {
+        Object flightKey = info != null && info.getSingleFlight() != null ? info.getSingleFlight().apply(input) : null;
+        Supplier<CompletableFuture<O>> load = () -> flightKey != null
+                ? singleFlight.executeAsync(flowNode.getNodeId(), flightKey, () -> stage(flowNode, input))
+                : stage(flowNode, input);
+        CompletableFuture<O> future;
+        if (cacheLoad != null) {
+            future = singleFlight.executeAsync(flowNode.getNodeId(), cacheLoad, () -> load.get().thenApply(result -> {
+                if (result != null) {
+                    cacheLoad.cache().put(cacheLoad.key(), result);
                 }
+                return result;
+            }));
+        } else {
+            future = load.get();
+        }
+        if (!future.isDone() && resumeExecutor != null) {
+            return future.thenApplyAsync(result -> result, resumeExecutor);
+        }
+        return future;
+    }
+
+    private <O, I> CompletableFuture<O> stage(AsyncFlowNode<O, I> flowNode, I input) {
+        CompletionStage<O> stage = flowNode.processAsync(input);
+        return stage != null ? stage.toCompletableFuture() : CompletableFuture.completedFuture(null);
+    }
+
+    private TtlCache<Object, Object> cache(FlowNode<?, ?> flowNode, Info info) {
+        if (info != null && info.getCache() != null) {
+            return info.getCache();
+        }
+        return !nodeCacheMap.isEmpty() ? nodeCacheMap.get(flowNode.getNodeId()) : null;
+    }
+
+    private Object cacheKey(Info info, Object input) {
+        if (info != null && info.getCache() != null && info.getCacheKey() != null) {
+            return info.getCacheKey().apply(input);
+        }
+        return input;
+    }
+
+    /**
+     * Calls through an info with a single-flight key share the result of an equal call already in flight
+     */
+    private <O, I> O processSingleFlight(FlowNode<O, I> flowNode, Info info, I input) {
+        if (info != null && info.getSingleFlight() != null) {
+            Object key = info.getSingleFlight().apply(input);
+            if (key != null) {
+                return singleFlight.execute(flowNode.getNodeId(), key, () -> process(flowNode, input));
             }
+        }
+        return process(flowNode, input);
+    }
 
-            if (!(flowNode instanceof FlowNodeStructure)) {
-                ((ContextBus) ContextBus.get()).roolbackExec(flowNode);
+    /**
+     * Calls of a batch node registered with a batch window go through its batcher and may be processed with other calls
+     */
+    private <O, I> O process(FlowNode<O, I> flowNode, I input) {
+        if (flowNode instanceof BatchFlowNode && !nodeBatcherMap.isEmpty()) {
+            NodeBatcher<O, I> nodeBatcher = cast(nodeBatcherMap.get(flowNode.getNodeId()));
+            if (nodeBatcher != null) {
+                return nodeBatcher.process(input);
             }
+        }
+        return flowNode.process(input);
+    }
 
-            return result;
+    private String start(ContextBus contextBus, FlowNode<?, ?> flowNode, Info info) {
+        String nodeIdOrAlias = info != null ? info.getIdOrAlias() : flowNode.getNodeId();
+        contextBus.setNodeIdOrAlias(nodeIdOrAlias);
+        String runId = FlowUtil.id();
+        if (info != null) {
+            contextBus.putRunId(info, runId);
+        } else {
+            contextBus.putRunId(nodeIdOrAlias, runId);
         }
-        return null;
+        return runId;
+    }
+
+    private <I> I input(ContextBus contextBus, Info info) {
+        I input = contextBus.getPreResult();
+        if (info != null && info.getInput() != null) {
+            input = (I) info.getInput().apply(input);
+        }
+        return input;
+    }
+
+    /**
+     * Publish the result of a node, {@code executed} is false when the result was served from a cache
+     */
+    private <O> O finish(ContextBus contextBus, FlowNode<O, ?> flowNode, Info info, String runId, O result, boolean executed) {
+        CancelToken cancelToken = CancelToken.current();
+        if (cancelToken == null) {
+            publish(contextBus, flowNode, info, runId, result, executed);
+        } else {
+            cancelToken.commit(() -> publish(contextBus, flowNode, info, runId, result, executed));
+        }
+        return result;
+    }
+
+    private void publish(ContextBus contextBus, FlowNode<?, ?> flowNode, Info info, String runId, Object result, boolean executed) {
+        if (result != null) {
+
+            String nodeIdOrAlias = info != null ? info.getIdOrAlias() : flowNode.getNodeId();
+            Object output = info != null && info.getOutput() != null ? info.getOutput().apply(result) : result;
+            if (info != null) {
+                contextBus.putResult(info, output);
+            } else {
+                contextBus.putResult(nodeIdOrAlias, output);
+            }
+
+            contextBus.putPreResult(result);
+            contextBus.setFlowResult(result);
+            contextBus.setPreRunIds(List.of(runId));
+
+            addConditions(contextBus, nodeIdOrAlias, result);
+        }
+
+        if (executed && !(flowNode instanceof FlowNodeStructure)) {
+            contextBus.roolbackExec(flowNode);
+        }
+    }
+
+    /**
+     * Add a node result to the condition map as configured by {@code resultToConditionType}
+     */
+    public void addConditions(ContextBus contextBus, String nodeIdOrAlias, Object result) {
+        if (result instanceof Map && resultToConditionType.contains("Map")) {
+            ((Map<String, Object>) result).forEach(contextBus::addCondition);
+        } else if (FlowUtil.isPlainObject(result) && resultToConditionType.contains("Object")) {
+            FlowUtil.toMap(result).forEach(contextBus::addCondition);
+        } else if (FlowUtil.isPlainObject(result) && resultToConditionType.contains(result.getClass().getSimpleName())) {
+            FlowUtil.toMap(result).forEach(contextBus::addCondition);
+        } else if (FlowUtil.isBaseType(result) && resultToConditionType.contains(result.getClass().getSimpleName())) {
+            contextBus.addCondition(nodeIdOrAlias, result);
+        }
+    }
+
+    /**
+     * Node caches, batchers and gateways are kept untyped across nodes, a node gets back the type it produced
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T cast(Object value) {
+        return (T) value;
+    }
+
+    /**
+     * Single-flight key of a cache miss, kept apart from the keys of {@link Info#cSingleFlight}
+     */
+    private record CacheLoad(TtlCache<Object, Object> cache, Object key) {
     }
 }
@@ -16,6 +16,7 @@ package org.salt.function.flow.node.register;
 
 import lombok.Data;
 import org.apache.commons.lang3.StringUtils;
+import org.salt.function.flow.node.BatchFlowNode;
 import org.salt.function.flow.node.FlowNode;
 import org.salt.function.flow.util.FlowUtil;
 import org.springframework.beans.BeansException;
@@ -49,6 +50,16 @@ public class FlowNodeScanner implements ApplicationContextAware {
                 }
                 flowNode.setNodeId(getNodeId(flowNode));
                 flowNodeManager.doRegistration(flowNode);
+                NodeIdentity nodeIdentity = flowNode.getClass().getAnnotation(NodeIdentity.class);
+                if (nodeIdentity != null && nodeIdentity.batchWindow() > 0) {
+                    if (!(flowNode instanceof BatchFlowNode<?, ?> batchFlowNode)) {
+                        throw new RuntimeException("batchWindow requires a BatchFlowNode. nodeId:" + flowNode.getNodeId());
+                    }
+                    flowNodeManager.doBatchRegistration(batchFlowNode, nodeIdentity.batchWindow(), nodeIdentity.batchSize());
+                }
+                if (nodeIdentity != null && nodeIdentity.cacheTtl() > 0) {
+                    flowNodeManager.doCacheRegistration(flowNode, nodeIdentity.cacheTtl(), nodeIdentity.cacheSize());
+                }
             }
         );
     }
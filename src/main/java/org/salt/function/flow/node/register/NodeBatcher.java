@@ -0,0 +1,110 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.salt.function.flow.node.register;
+
+import org.salt.function.flow.node.BatchFlowNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces concurrent calls of a batch node: the first call of a batch waits for the window or for the batch to fill,
+ * then processes every input collected so far in one {@code processBatch} and hands each caller its own result.
+ * No timer thread is involved, the leading caller processes the batch.
+ */
+class NodeBatcher<O, I> {
+
+    private final BatchFlowNode<O, I> flowNode;
+
+    private final long windowNanos;
+
+    private final int batchSize;
+
+    /**
+     * Batch collecting inputs, null until the next call opens one; guarded by this
+     */
+    private Batch<O, I> pending;
+
+    NodeBatcher(BatchFlowNode<O, I> flowNode, long batchWindow, int batchSize) {
+        this.flowNode = flowNode;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(batchWindow);
+        this.batchSize = batchSize > 0 ? batchSize : Integer.MAX_VALUE;
+    }
+
+    O process(I input) {
+        Batch<O, I> batch;
+        int index;
+        boolean leader = false;
+        synchronized (this) {
+            if (pending == null) {
+                pending = new Batch<>();
+                leader = true;
+            }
+            batch = pending;
+            index = batch.inputs.size();
+            batch.inputs.add(input);
+            if (batch.inputs.size() >= batchSize) {
+                pending = null;
+                batch.full.countDown();
+            }
+        }
+        if (leader) {
+            try {
+                batch.full.await(windowNanos, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (this) {
+                if (pending == batch) {
+                    pending = null;
+                }
+            }
+            dispatch(batch);
+        }
+        try {
+            return batch.outputs.join().get(index);
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Called once the batch is closed, so its inputs no longer change
+     */
+    private void dispatch(Batch<O, I> batch) {
+        try {
+            List<O> outputs = flowNode.processBatch(batch.inputs);
+            if (outputs == null || outputs.size() != batch.inputs.size()) {
+                throw new RuntimeException("processBatch must return one result per input. nodeId:" + flowNode.getNodeId());
+            }
+            batch.outputs.complete(outputs);
+        } catch (Throwable e) {
+            batch.outputs.completeExceptionally(e);
+        }
+    }
+
+    private static class Batch<O, I> {
+        final List<I> inputs = new ArrayList<>();
+        final CountDownLatch full = new CountDownLatch(1);
+        final CompletableFuture<List<O>> outputs = new CompletableFuture<>();
+    }
+}
@@ -30,4 +30,26 @@ public @interface NodeIdentity {
 
     @AliasFor("value")
     String nodeId() default "";
+
+    /**
+     * Batch window in milliseconds for a {@link org.salt.function.flow.node.BatchFlowNode}: concurrent calls arriving
+     * within the window are processed together in one {@code processBatch}, 0 processes every call on its own
+     */
+    long batchWindow() default 0;
+
+    /**
+     * Most calls processed in one batch, the batch is processed as soon as it is full, 0 for no limit
+     */
+    int batchSize() default 0;
+
+    /**
+     * Time in milliseconds a result is served from cache for an equal input without calling {@code process},
+     * 0 disables the cache; only for nodes whose result depends on their input alone, null results are not cached
+     */
+    long cacheTtl() default 0;
+
+    /**
+     * Most results cached, least recently used results are evicted first
+     */
+    int cacheSize() default 1024;
 }
\ No newline at end of file
@@ -0,0 +1,93 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.salt.function.flow.node.register;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Deduplicates concurrent calls: the first call of a key processes, calls arriving while it is in flight
+ * wait for its result or exception. Nothing is kept once the call completes.
+ */
+class SingleFlight {
+
+    private final ConcurrentMap<Key, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    <O> O execute(String nodeId, Object key, Supplier<O> process) {
+        Key flightKey = new Key(nodeId, key);
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> leader = inFlight.putIfAbsent(flightKey, flight);
+        if (leader != null) {
+            try {
+                return cast(leader.join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                throw new RuntimeException(e.getCause());
+            }
+        }
+        try {
+            O result = process.get();
+            flight.complete(result);
+            return result;
+        } catch (Throwable e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(flightKey, flight);
+        }
+    }
+
+    /**
+     * Same as {@link #execute} without waiting: calls arriving while the first one is in flight share its future
+     */
+    <O> CompletableFuture<O> executeAsync(String nodeId, Object key, Supplier<CompletableFuture<O>> process) {
+        Key flightKey = new Key(nodeId, key);
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> leader = inFlight.putIfAbsent(flightKey, flight);
+        if (leader != null) {
+            return leader.thenApply(SingleFlight::cast);
+        }
+        CompletableFuture<O> future;
+        try {
+            future = process.get();
+        } catch (Throwable e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        return future.whenComplete((result, e) -> {
+            inFlight.remove(flightKey, flight);
+            if (e != null) {
+                flight.completeExceptionally(e);
+            } else {
+                flight.complete(result);
+            }
+        });
+    }
+
+    /**
+     * Calls of any node share the in-flight map, a follower gets back the type its leader produced for the same key
+     */
+    @SuppressWarnings("unchecked")
+    private static <O> O cast(Object result) {
+        return (O) result;
+    }
+
+    private record Key(String nodeId, Object key) {
+    }
+}
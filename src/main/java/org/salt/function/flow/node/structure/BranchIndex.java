@@ -0,0 +1,159 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.salt.function.flow.node.structure;
+
+import org.apache.commons.lang3.StringUtils;
+import org.salt.function.flow.Info;
+import org.salt.function.flow.util.ConditionCompiler;
+import org.salt.function.flow.util.FlowUtil;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+
+/**
+ * Routing index for gateways whose conditional branches are equality tests on one key,
+ * e.g. {@code channel == 'A'}, {@code channel == 'B'}, ...: the branches matching the current key value
+ * are found with one hash lookup instead of evaluating every include.
+ * Branches that are not such equality tests keep being evaluated one by one, and the selected
+ * branches are returned in declaration order.
+ */
+public final class BranchIndex {
+
+    /**
+     * Below this many equality branches a linear scan is as cheap as the lookup
+     */
+    private static final int MIN_INDEXED_BRANCHES = 4;
+
+    private static final int[] EMPTY = new int[0];
+
+    private final List<Info> infoList;
+
+    private final String key;
+
+    /**
+     * String, Boolean or Number: the kind every indexed literal shares
+     */
+    private final Class<?> kind;
+
+    private final Map<Object, int[]> positions;
+
+    private final int[] others;
+
+    private BranchIndex(List<Info> infoList, String key, Class<?> kind, Map<Object, int[]> positions, int[] others) {
+        this.infoList = infoList;
+        this.key = key;
+        this.kind = kind;
+        this.positions = positions;
+        this.others = others;
+    }
+
+    /**
+     * Build the index for a gateway, or return null when it has too few equality branches on a common key
+     */
+    public static BranchIndex of(List<Info> infoList) {
+        if (infoList == null || infoList.size() < MIN_INDEXED_BRANCHES) {
+            return null;
+        }
+        String key = null;
+        Class<?> kind = null;
+        int indexed = 0;
+        Map<Object, List<Integer>> positionLists = new HashMap<>();
+        List<Integer> others = new ArrayList<>();
+        for (int i = 0; i < infoList.size(); i++) {
+            Info info = infoList.get(i);
+            Map.Entry<String, Object> equality = info.getMatch() == null && StringUtils.isNotEmpty(info.getInclude())
+                    ? ConditionCompiler.equality(info.getInclude()) : null;
+            Class<?> literalKind = equality != null ? kindOf(equality.getValue()) : null;
+            if (literalKind == null || (key != null && !key.equals(equality.getKey())) || (kind != null && kind != literalKind)) {
+                others.add(i);
+                continue;
+            }
+            key = equality.getKey();
+            kind = literalKind;
+            positionLists.computeIfAbsent(normalize(equality.getValue()), value -> new ArrayList<>()).add(i);
+            indexed++;
+        }
+        if (indexed < MIN_INDEXED_BRANCHES) {
+            return null;
+        }
+        Map<Object, int[]> positions = new HashMap<>();
+        positionLists.forEach((value, list) -> positions.put(value, list.stream().mapToInt(Integer::intValue).toArray()));
+        return new BranchIndex(infoList, key, kind, positions, others.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    /**
+     * Select the branches to execute, or return null when the key value has a kind the index cannot compare,
+     * in which case the caller evaluates every branch
+     */
+    public List<Info> select(Object input, Map<String, Object> conditionMap) {
+        Object value = conditionMap.get(key);
+        if (value != null && kindOf(value) != kind) {
+            return null;
+        }
+        int[] hits = value != null ? positions.getOrDefault(normalize(value), EMPTY) : EMPTY;
+        List<Info> selected = new ArrayList<>(hits.length + others.length);
+        int h = 0, o = 0;
+        while (h < hits.length || o < others.length) {
+            if (o >= others.length || (h < hits.length && hits[h] < others[o])) {
+                selected.add(infoList.get(hits[h++]));
+            } else {
+                Info info = infoList.get(others[o++]);
+                if (FlowUtil.isExe(input, info)) {
+                    selected.add(info);
+                }
+            }
+        }
+        return selected;
+    }
+
+    private static Class<?> kindOf(Object value) {
+        if (value instanceof String) {
+            return String.class;
+        }
+        if (value instanceof Boolean) {
+            return Boolean.class;
+        }
+        if (value instanceof Number) {
+            return Number.class;
+        }
+        return null;
+    }
+
+    /**
+     * Numbers equal by numeric comparison map to the same key, e.g. 1, 1L, 1.0 and BigDecimal("1.00")
+     */
+    private static Object normalize(Object value) {
+        if (!(value instanceof Number number)) {
+            return value;
+        }
+        if (number instanceof Integer || number instanceof Long || number instanceof Short || number instanceof Byte) {
+            return number.longValue();
+        }
+        try {
+            BigDecimal decimal = number instanceof BigDecimal bigDecimal ? bigDecimal
+                    : number instanceof BigInteger bigInteger ? new BigDecimal(bigInteger)
+                    : BigDecimal.valueOf(number.doubleValue());
+            decimal = decimal.stripTrailingZeros();
+            if (decimal.scale() <= 0 && decimal.compareTo(BigDecimal.valueOf(Long.MAX_VALUE)) <= 0
+                    && decimal.compareTo(BigDecimal.valueOf(Long.MIN_VALUE)) >= 0) {
+                return decimal.longValue();
+            }
+            return decimal;
+        } catch (NumberFormatException e) {
+            return number;
+        }
+    }
+}
@@ -18,18 +18,29 @@ import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.salt.function.flow.FlowEngine;
+import org.salt.function.flow.GatewayOption;
 import org.salt.function.flow.Info;
 import org.salt.function.flow.context.ContextBus;
 import org.salt.function.flow.context.IContextBus;
 import org.salt.function.flow.node.FlowNode;
 import org.salt.function.flow.node.register.FlowNodeManager;
+import org.salt.function.flow.thread.CancelToken;
 import org.salt.function.flow.thread.TheadHelper;
 import org.salt.function.flow.util.FlowUtil;
 import org.springframework.util.CollectionUtils;
 
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -46,10 +57,27 @@ public abstract class FlowNodeStructure<O> extends FlowNode<O, Object> {
     @Setter
     protected TheadHelper theadHelper;
 
+    /**
+     * Equality routing index built when the flow is compiled, null when branches are evaluated one by one
+     */
+    @Setter
+    protected BranchIndex branchIndex;
+
+    @Setter
+    protected Set<GatewayOption> options = EnumSet.noneOf(GatewayOption.class);
+
     public void setNodeInfoList(List<Info> infoList) {
         this.infoList = infoList;
     }
 
+    public List<Info> getNodeInfoList() {
+        return infoList;
+    }
+
+    protected boolean hasOption(GatewayOption option) {
+        return options.contains(option);
+    }
+
     protected boolean isFlowNode(String nodeId) {
         if (StringUtils.isEmpty(nodeId)) {
             return false;
@@ -58,39 +86,168 @@ public abstract class FlowNodeStructure<O> extends FlowNode<O, Object> {
     }
 
     public O process(Object input) {
-        if (CollectionUtils.isEmpty(infoList)) {
+        List<Info> infoListExe = select(input);
+        if (CollectionUtils.isEmpty(infoListExe)) {
             return null;
         }
-        List<Info> infoListExe = infoList.stream().filter(info -> FlowUtil.isExe(input, info)).collect(Collectors.toList());
+        return doProcessGateway(infoListExe);
+    }
+
+    public CompletableFuture<O> processAsync(Object input) {
+        List<Info> infoListExe = select(input);
         if (CollectionUtils.isEmpty(infoListExe)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return doProcessGatewayAsync(infoListExe);
+    }
+
+    protected List<Info> select(Object input) {
+        if (CollectionUtils.isEmpty(infoList)) {
             return null;
         }
-        return doProcessGateway(infoListExe);
+        List<Info> infoListExe = branchIndex != null ? branchIndex.select(input, ((ContextBus) getContextBus()).getConditionMap()) : null;
+        if (infoListExe == null) {
+            infoListExe = infoList.stream().filter(info -> FlowUtil.isExe(input, info)).collect(Collectors.toList());
+        }
+        return infoListExe;
+    }
+
+    /**
+     * Process the gateway for several flow runs, one input and one context per run, see {@code FlowEngine.executeBatch};
+     * by default each run processes the gateway in its own context
+     */
+    public List<O> processBatch(List<Object> inputs, List<TheadHelper.Snapshot> contexts) {
+        List<O> outputs = new ArrayList<>(inputs.size());
+        for (int i = 0; i < inputs.size(); i++) {
+            Object input = inputs.get(i);
+            outputs.add(contexts.get(i).call(() -> process(input)));
+        }
+        return outputs;
     }
 
     protected abstract O doProcessGateway(List<Info> infoList);
 
+    /**
+     * Gateways that wait on other threads override this to continue when the branches complete,
+     * the others run synchronously on the calling thread
+     */
+    protected CompletableFuture<O> doProcessGatewayAsync(List<Info> infoList) {
+        try {
+            return CompletableFuture.completedFuture(doProcessGateway(infoList));
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
     protected O execute(Info info) {
-        if (info.getFlowNode() != null) {
-            return flowNodeManager.execute((FlowNode<O, ?>) info.getFlowNode(), info);
-        } else if (info.getFunNode() != null) {
-            return flowNodeManager.execute(new FlowNode<>() {
-                final String nodeId = info.getId();
-                @Override
-                public O process(Object input) {
-                    return (O) info.getFunNode().apply(input);
-                }
-            } , info);
-        } else if (isFlowNode(info.getId())) {
-            return flowNodeManager.execute(info.getId(), info);
+        if (info.getTarget() == null && info.getTargetFlow() == null) {
+            flowEngine.resolve(info);
+        }
+        if (info.getTarget() != null) {
+            return flowNodeManager.execute((FlowNode<O, ?>) info.getTarget(), info);
+        }
+        if (info.getTargetFlow() != null) {
+            return flowEngine.execute(info.getTargetFlow());
+        }
+        return flowEngine.execute(info.getId());
+    }
+
+    /**
+     * Branch results are typed Object: a branch result is not the gateway output type
+     */
+    protected CompletableFuture<Object> executeAsync(Info info) {
+        try {
+            if (info.getTarget() == null && info.getTargetFlow() == null) {
+                flowEngine.resolve(info);
+            }
+            if (info.getTarget() != null) {
+                return flowNodeManager.executeAsync((FlowNode<Object, ?>) info.getTarget(), info);
+            }
+            if (info.getTargetFlow() != null) {
+                return flowEngine.executeAsync(info.getTargetFlow());
+            }
+            return flowEngine.executeAsync(info.getId());
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * The exception a failed stage was completed with, without the CompletionException wrapper
+     */
+    protected static Exception cause(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        return cause instanceof Exception ? (Exception) cause : new RuntimeException(cause);
+    }
+
+    /**
+     * Record a branch exception, unless the branch has been cancelled
+     */
+    protected void putException(ContextBus contextBus, CancelToken cancelToken, Info info, Exception e) {
+        if (cancelToken == null) {
+            contextBus.putException(info, e);
         } else {
-            if (info.getFlow() != null) {
-                return flowEngine.execute(info.getFlow());
+            cancelToken.commit(() -> contextBus.putException(info, e));
+        }
+    }
+
+    /**
+     * Cancel the branches that have not finished, interrupting their tasks, and record them as timed out if requested
+     */
+    protected void cancelBranches(List<Info> infoList, CancelToken[] cancelTokens, Future<?>[] futures, boolean isTimeout) {
+        for (int i = 0; i < cancelTokens.length; i++) {
+            if (cancelTokens[i] != null && cancelTokens[i].cancel()) {
+                futures[i].cancel(true);
+                if (isTimeout) {
+                    ((ContextBus) getContextBus()).putException(infoList.get(i), new TimeoutException("node execute timeout: " + infoList.get(i).getIdOrAlias()));
+                }
             }
-            return flowEngine.execute(info.getId());
         }
     }
 
+    /**
+     * Wait for the results of parallel tasks in order within the gateway timeout, a failed or timed out task
+     * cancels the others and fails the gateway; null if the gateway thread is interrupted
+     */
+    protected List<Object> joinTasks(Future<?>[] futures, CancelToken[] cancelTokens, ContextBus contextBus) {
+        List<Object> results = new ArrayList<>(futures.length);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(theadHelper.getTimeout());
+        try {
+            for (Future<?> future : futures) {
+                results.add(future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            }
+            return results;
+        } catch (ExecutionException e) {
+            cancelTasks(futures, cancelTokens);
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+        } catch (TimeoutException e) {
+            cancelTasks(futures, cancelTokens);
+            throw timeout(contextBus);
+        } catch (InterruptedException e) {
+            cancelTasks(futures, cancelTokens);
+            Thread.currentThread().interrupt();
+            contextBus.putException(nodeId, e);
+            return null;
+        }
+    }
+
+    protected void cancelTasks(Future<?>[] futures, CancelToken[] cancelTokens) {
+        for (int i = 0; i < cancelTokens.length; i++) {
+            if (cancelTokens[i].cancel()) {
+                futures[i].cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Record the gateway as timed out and build the exception that fails it
+     */
+    protected RuntimeException timeout(ContextBus contextBus) {
+        TimeoutException e = new TimeoutException("node execute timeout: " + nodeId);
+        contextBus.putException(nodeId, e);
+        return new RuntimeException(e);
+    }
+
     protected boolean isSuspend(IContextBus iContextBus) {
         return ((ContextBus) iContextBus).isRollbackProcess() || ((ContextBus) iContextBus).isStopProcess();
     }
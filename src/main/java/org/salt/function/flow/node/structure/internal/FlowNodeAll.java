@@ -19,9 +19,12 @@ import org.salt.function.flow.Info;
 import org.salt.function.flow.context.ContextBus;
 import org.salt.function.flow.context.IContextBus;
 import org.salt.function.flow.node.structure.FlowNodeStructure;
+import org.salt.function.flow.thread.TheadHelper;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @Slf4j
 public class FlowNodeAll extends FlowNodeStructure<Void> {
@@ -32,7 +35,7 @@ public class FlowNodeAll extends FlowNodeStructure<Void> {
             try {
                 execute(info);
             } catch (Exception e) {
-                ((ContextBus) iContextBus).putException(info.getIdOrAlias(), e);
+                ((ContextBus) iContextBus).putException(info, e);
                 throw e;
             }
             if (isSuspend(iContextBus)) {
@@ -41,4 +44,32 @@ public class FlowNodeAll extends FlowNodeStructure<Void> {
         }
         return null;
     }
+
+    @Override
+    protected CompletableFuture<Void> doProcessGatewayAsync(List<Info> infoList) {
+        return executeAsync(infoList, 0, (ContextBus) getContextBus(), TheadHelper.capture());
+    }
+
+    private CompletableFuture<Void> executeAsync(List<Info> infoList, int from, ContextBus contextBus, TheadHelper.Snapshot snapshot) {
+        for (int i = from; i < infoList.size(); i++) {
+            Info info = infoList.get(i);
+            CompletableFuture<?> future = executeAsync(info);
+            if (!future.isDone() || future.isCompletedExceptionally()) {
+                int next = i + 1;
+                return future.handle((result, e) -> {
+                    if (e != null) {
+                        contextBus.putException(info, cause(e));
+                        throw new CompletionException(cause(e));
+                    }
+                    return null;
+                }).thenCompose(v -> isSuspend(contextBus)
+                        ? CompletableFuture.completedFuture(null)
+                        : snapshot.call(() -> executeAsync(infoList, next, contextBus, snapshot)));
+            }
+            if (isSuspend(contextBus)) {
+                return CompletableFuture.completedFuture(null);
+            }
+        }
+        return CompletableFuture.completedFuture(null);
+    }
 }
@@ -15,15 +15,23 @@
 package org.salt.function.flow.node.structure.internal;
 
 import lombok.extern.slf4j.Slf4j;
+import org.salt.function.flow.GatewayOption;
 import org.salt.function.flow.Info;
 import org.salt.function.flow.context.ContextBus;
 import org.salt.function.flow.context.IContextBus;
 import org.salt.function.flow.node.structure.FlowNodeStructure;
+import org.salt.function.flow.thread.CancelToken;
+import org.salt.function.flow.thread.TheadHelper;
 
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 @Slf4j
 public class FlowNodeConcurrent extends FlowNodeStructure<Map<String, Object>> {
@@ -31,23 +39,60 @@ public class FlowNodeConcurrent extends FlowNodeStructure<Map<String, Object>> {
     @Override
     public Map<String, Object> doProcessGateway(List<Info> infoList) {
         IContextBus iContextBus = getContextBus();
-        CountDownLatch finalCountDownLatch = new CountDownLatch(infoList.size());
-        for (Info info : infoList) {
-            theadHelper.submit(() -> {
+        boolean cancelOnTimeout = hasOption(GatewayOption.CANCEL_ON_TIMEOUT);
+        boolean failFast = hasOption(GatewayOption.FAIL_FAST);
+        CancelToken[] cancelTokens = new CancelToken[infoList.size()];
+        Future<?>[] futures = new Future<?>[infoList.size()];
+        AtomicInteger remaining = new AtomicInteger(infoList.size());
+        CompletableFuture<Boolean> allDone = new CompletableFuture<>();
+        CompletableFuture<Boolean> failure = new CompletableFuture<>();
+        for (int i = 0; i < infoList.size(); i++) {
+            Info info = infoList.get(i);
+            CancelToken cancelToken = cancelOnTimeout || failFast ? CancelToken.fork() : null;
+            cancelTokens[i] = cancelToken;
+            futures[i] = theadHelper.submit(() -> {
+                if (cancelToken != null) {
+                    cancelToken.install();
+                }
                 try {
                     execute(info);
+                    if (failFast && isSuspend(iContextBus)) {
+                        failure.complete(true);
+                    }
                 } catch (Exception e) {
-                    ((ContextBus) iContextBus).putException(info.getIdOrAlias(), e);
+                    putException((ContextBus) iContextBus, cancelToken, info, e);
+                    if (failFast && !CancelToken.cancelled()) {
+                        failure.complete(true);
+                    }
                 } finally {
-                    finalCountDownLatch.countDown();
+                    if (cancelToken != null) {
+                        cancelToken.done();
+                    }
+                    if (remaining.decrementAndGet() == 0) {
+                        allDone.complete(true);
+                    }
                 }
+                return null;
             });
         }
         if (isSuspend(iContextBus)) {
             return null;
         }
         try {
-            boolean isTimeout = finalCountDownLatch.await(theadHelper.getTimeout(), TimeUnit.MILLISECONDS);
+            boolean isTimeout = await(CompletableFuture.anyOf(allDone, failure));
+            if (failure.isDone()) {
+                cancelBranches(infoList, cancelTokens, futures, false);
+                if (isSuspend(iContextBus)) {
+                    return null;
+                }
+                mergeRunIds();
+                return handle(infoList, false);
+            }
+            if (!isTimeout && cancelOnTimeout) {
+                cancelBranches(infoList, cancelTokens, futures, true);
+                mergeRunIds();
+                return handle(infoList, false);
+            }
             mergeRunIds();
             return handle(infoList, !isTimeout);
         } catch (InterruptedException e) {
@@ -55,4 +100,79 @@ public class FlowNodeConcurrent extends FlowNodeStructure<Map<String, Object>> {
         }
         return null;
     }
+
+    @Override
+    protected CompletableFuture<Map<String, Object>> doProcessGatewayAsync(List<Info> infoList) {
+        ContextBus contextBus = (ContextBus) getContextBus();
+        TheadHelper.Snapshot snapshot = TheadHelper.capture();
+        boolean cancelOnTimeout = hasOption(GatewayOption.CANCEL_ON_TIMEOUT);
+        boolean failFast = hasOption(GatewayOption.FAIL_FAST);
+        CancelToken[] cancelTokens = new CancelToken[infoList.size()];
+        CompletableFuture<?>[] submitted = new CompletableFuture<?>[infoList.size()];
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[infoList.size()];
+        CompletableFuture<Boolean> failure = new CompletableFuture<>();
+        for (int i = 0; i < futures.length; i++) {
+            Info info = infoList.get(i);
+            CancelToken cancelToken = cancelOnTimeout || failFast ? CancelToken.fork() : null;
+            cancelTokens[i] = cancelToken;
+            CompletableFuture<CompletableFuture<Object>> branch = theadHelper.submitAsync(() -> {
+                if (cancelToken != null) {
+                    cancelToken.install();
+                }
+                return executeAsync(info);
+            });
+            submitted[i] = branch;
+            futures[i] = branch
+                    .thenCompose(Function.identity())
+                    .handle((result, e) -> {
+                        if (e != null) {
+                            putException(contextBus, cancelToken, info, cause(e));
+                        }
+                        if (failFast && ((e != null && !cancelToken.isCancelled()) || isSuspend(contextBus))) {
+                            failure.complete(true);
+                        }
+                        if (cancelToken != null) {
+                            cancelToken.done();
+                        }
+                        return null;
+                    });
+        }
+        if (isSuspend(contextBus)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        // join on a flow thread: on timeout the completion comes from the JDK delay scheduler
+        return CompletableFuture.anyOf(CompletableFuture.allOf(futures).thenApply(v -> true), failure)
+                .completeOnTimeout(false, theadHelper.getTimeout(), TimeUnit.MILLISECONDS)
+                .thenApplyAsync(completed -> snapshot.call(() -> {
+                    if (failure.isDone()) {
+                        cancelBranches(infoList, cancelTokens, submitted, false);
+                        if (isSuspend(contextBus)) {
+                            return null;
+                        }
+                        mergeRunIds();
+                        return handle(infoList, false);
+                    }
+                    if (!(Boolean) completed && cancelOnTimeout) {
+                        cancelBranches(infoList, cancelTokens, submitted, true);
+                        mergeRunIds();
+                        return handle(infoList, false);
+                    }
+                    mergeRunIds();
+                    return handle(infoList, !(Boolean) completed);
+                }), theadHelper.getExecutor());
+    }
+
+    /**
+     * Wait for all branches, or a fail fast branch, within the gateway timeout; false on timeout
+     */
+    private boolean await(CompletableFuture<Object> completion) throws InterruptedException {
+        try {
+            completion.get(theadHelper.getTimeout(), TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
 }
@@ -0,0 +1,355 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.salt.function.flow.node.structure.internal;
+
+import lombok.extern.slf4j.Slf4j;
+import org.salt.function.flow.GatewayOption;
+import org.salt.function.flow.Info;
+import org.salt.function.flow.context.ContextBus;
+import org.salt.function.flow.node.structure.FlowNodeStructure;
+import org.salt.function.flow.thread.CancelToken;
+import org.salt.function.flow.thread.TheadHelper;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * Runs the nodes as a dependency graph: each node starts as soon as the nodes it depends on
+ * ({@link Info#cDepends}) have completed, nodes without dependencies start at once. A dependency on an id
+ * outside the gateway is a result produced before it and is not waited for. The dependents of a failed node are
+ * skipped, the gateway result is the map of node results and exceptions like {@code concurrent}.
+ * <p>
+ * A sequential dag stands for a chain of {@code next} steps rewritten by {@code parallelize}: dependencies are the
+ * results a node reads ({@link Info#cReads}) from the nodes before it and a node gets the result of the last node it
+ * reads as input. Nodes are started in chain order and none starts once an earlier node has failed or stopped the
+ * flow, a later node still running then is cancelled; the first failure or stop in chain order decides the outcome,
+ * otherwise the result is the last non-null node result, as the chain would leave it. Node results are added to the
+ * conditions again in chain order once the stage completes, and a sequential dag has no deadline unless a positive
+ * timeout is given.
+ */
+@Slf4j
+public class FlowNodeDag extends FlowNodeStructure<Object> {
+
+    private final boolean sequential;
+
+    /**
+     * Indexes of the nodes each node depends on
+     */
+    private int[][] depends;
+
+    /**
+     * Node indexes in topological order
+     */
+    private int[] order;
+
+    private Map<Info, Integer> indexes;
+
+    public FlowNodeDag() {
+        this(false);
+    }
+
+    public FlowNodeDag(boolean sequential) {
+        this.sequential = sequential;
+    }
+
+    @Override
+    public void setNodeInfoList(List<Info> infoList) {
+        super.setNodeInfoList(infoList);
+        indexes = new IdentityHashMap<>();
+        for (int i = 0; i < infoList.size(); i++) {
+            indexes.put(infoList.get(i), i);
+        }
+        depends = new int[infoList.size()][];
+        int[] inDegree = new int[infoList.size()];
+        List<List<Integer>> dependents = new ArrayList<>();
+        for (int i = 0; i < infoList.size(); i++) {
+            dependents.add(new ArrayList<>());
+        }
+        for (int i = 0; i < infoList.size(); i++) {
+            List<Integer> dependIndexes = new ArrayList<>();
+            List<String> ids = sequential ? infoList.get(i).getReads() : infoList.get(i).getDepends();
+            if (ids != null) {
+                for (int j = 0; j < (sequential ? i : infoList.size()); j++) {
+                    if (ids.contains(infoList.get(j).getIdOrAlias())) {
+                        dependIndexes.add(j);
+                        dependents.get(j).add(i);
+                    }
+                }
+            }
+            depends[i] = dependIndexes.stream().mapToInt(Integer::intValue).toArray();
+            inDegree[i] = depends[i].length;
+        }
+        order = new int[infoList.size()];
+        if (sequential) {
+            // a node only reads nodes before it, so the chain order is a topological order
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            return;
+        }
+        int count = 0;
+        Deque<Integer> ready = new ArrayDeque<>();
+        for (int i = 0; i < infoList.size(); i++) {
+            if (inDegree[i] == 0) {
+                ready.add(i);
+            }
+        }
+        while (!ready.isEmpty()) {
+            int i = ready.poll();
+            order[count++] = i;
+            for (int dependent : dependents.get(i)) {
+                if (--inDegree[dependent] == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        if (count < infoList.size()) {
+            List<String> cycle = new ArrayList<>();
+            for (int i = 0; i < infoList.size(); i++) {
+                if (inDegree[i] > 0) {
+                    cycle.add(infoList.get(i).getIdOrAlias());
+                }
+            }
+            throw new RuntimeException("dag dependencies have a cycle: " + cycle);
+        }
+    }
+
+    @Override
+    protected Object doProcessGateway(List<Info> infoList) {
+        ContextBus contextBus = (ContextBus) getContextBus();
+        CancelToken[] cancelTokens = new CancelToken[this.infoList.size()];
+        AtomicReferenceArray<Future<?>> submitted = new AtomicReferenceArray<>(this.infoList.size());
+        AtomicReferenceArray<Object> results = new AtomicReferenceArray<>(this.infoList.size());
+        AtomicInteger halted = new AtomicInteger(Integer.MAX_VALUE);
+        CompletableFuture<Void> done = schedule(infoList, false, cancelTokens, submitted, results, halted);
+        try {
+            if (unbounded()) {
+                done.get();
+            } else {
+                done.get(theadHelper.getTimeout(), TimeUnit.MILLISECONDS);
+            }
+            return complete(infoList, true, cancelTokens, submitted, results, halted);
+        } catch (ExecutionException e) {
+            return complete(infoList, true, cancelTokens, submitted, results, halted);
+        } catch (TimeoutException e) {
+            return complete(infoList, false, cancelTokens, submitted, results, halted);
+        } catch (InterruptedException e) {
+            cancel(cancelTokens, submitted, 0);
+            Thread.currentThread().interrupt();
+            contextBus.putException(nodeId, e);
+        }
+        return null;
+    }
+
+    @Override
+    protected CompletableFuture<Object> doProcessGatewayAsync(List<Info> infoList) {
+        TheadHelper.Snapshot snapshot = TheadHelper.capture();
+        CancelToken[] cancelTokens = new CancelToken[this.infoList.size()];
+        AtomicReferenceArray<Future<?>> submitted = new AtomicReferenceArray<>(this.infoList.size());
+        AtomicReferenceArray<Object> results = new AtomicReferenceArray<>(this.infoList.size());
+        AtomicInteger halted = new AtomicInteger(Integer.MAX_VALUE);
+        CompletableFuture<Boolean> done = schedule(infoList, true, cancelTokens, submitted, results, halted)
+                .handle((v, e) -> true);
+        if (!unbounded()) {
+            done = done.completeOnTimeout(false, theadHelper.getTimeout(), TimeUnit.MILLISECONDS);
+        }
+        // join on a flow thread: on timeout the completion comes from the JDK delay scheduler
+        return done.thenApplyAsync(completed -> snapshot.call(() -> complete(infoList, completed, cancelTokens, submitted, results, halted)), theadHelper.getExecutor());
+    }
+
+    /**
+     * Chain every selected node on the completion of its dependencies, a node is submitted from a fork of the gateway
+     * context so it runs with the gateway input as input, or in a sequential dag after the node before it has been
+     * started and with the result of the last node it reads as input; the returned future completes when all nodes
+     * have completed
+     */
+    private CompletableFuture<Void> schedule(List<Info> infoListExe, boolean async, CancelToken[] cancelTokens,
+                                             AtomicReferenceArray<Future<?>> submitted, AtomicReferenceArray<Object> results,
+                                             AtomicInteger halted) {
+        ContextBus contextBus = (ContextBus) getContextBus();
+        boolean cancelOnTimeout = sequential || hasOption(GatewayOption.CANCEL_ON_TIMEOUT);
+        Object input = contextBus.getPreResult();
+        Object[] inputs = new Object[infoList.size()];
+        boolean[] selected = new boolean[infoList.size()];
+        infoListExe.forEach(info -> selected[indexes.get(info)] = true);
+        CompletableFuture<?>[] nodes = new CompletableFuture<?>[infoList.size()];
+        CompletableFuture<?> started = CompletableFuture.completedFuture(null);
+        for (int i : order) {
+            if (!selected[i]) {
+                nodes[i] = CompletableFuture.completedFuture(null);
+                continue;
+            }
+            Info info = infoList.get(i);
+            int index = i;
+            CancelToken cancelToken = cancelOnTimeout ? CancelToken.fork() : null;
+            cancelTokens[i] = cancelToken;
+            // dependents may complete at once on different threads, each node is started from its own context
+            TheadHelper.Snapshot context = TheadHelper.fork();
+            CompletableFuture<?>[] waitFutures = new CompletableFuture<?>[depends[i].length + (sequential ? 1 : 0)];
+            for (int j = 0; j < depends[i].length; j++) {
+                waitFutures[j] = nodes[depends[i][j]];
+            }
+            if (sequential) {
+                waitFutures[depends[i].length] = started;
+            }
+            CompletableFuture<CompletableFuture<Object>> start = CompletableFuture.allOf(waitFutures).thenApply(v -> context.<CompletableFuture<Object>>call(() -> {
+                if (isSuspend(contextBus) || halted.get() < index || (cancelToken != null && cancelToken.isCancelled())) {
+                    return null;
+                }
+                if (sequential) {
+                    inputs[index] = input(index, input, inputs, results);
+                    contextBus.putPreResult(inputs[index]);
+                }
+                CompletableFuture<CompletableFuture<Object>> task = theadHelper.submitAsync(() -> {
+                    if (cancelToken != null) {
+                        cancelToken.install();
+                    }
+                    return async ? executeAsync(info) : CompletableFuture.completedFuture(execute(info));
+                });
+                submitted.set(index, task);
+                return task.thenCompose(Function.identity());
+            }));
+            if (sequential) {
+                started = start.handle((node, e) -> null);
+            }
+            nodes[i] = start.thenCompose(node -> node == null ? CompletableFuture.completedFuture(null) : node
+                    .whenComplete((result, e) -> {
+                        if (e != null) {
+                            putException(contextBus, cancelToken, info, cause(e));
+                        } else {
+                            results.set(index, result);
+                        }
+                        if (cancelToken != null) {
+                            cancelToken.done();
+                        }
+                        if (sequential && (e != null || isSuspend(contextBus)) && !cancelToken.isCancelled()) {
+                            halt(index, halted, cancelTokens, submitted);
+                        }
+                    }));
+        }
+        return CompletableFuture.allOf(nodes);
+    }
+
+    /**
+     * Input of a sequential dag node: the result of the last node it reads, or that node's own input when the result
+     * is null, the gateway input when it reads no node of the gateway
+     */
+    private Object input(int index, Object input, Object[] inputs, AtomicReferenceArray<Object> results) {
+        if (depends[index].length == 0) {
+            return input;
+        }
+        int last = depends[index][depends[index].length - 1];
+        return results.get(last) != null ? results.get(last) : inputs[last];
+    }
+
+    /**
+     * A sequential dag node failed or stopped the flow: nodes after it in chain order do not start, running ones
+     * are cancelled so their results and exceptions are dropped
+     */
+    private void halt(int index, AtomicInteger halted, CancelToken[] cancelTokens, AtomicReferenceArray<Future<?>> submitted) {
+        if (halted.accumulateAndGet(index, Math::min) == index) {
+            cancel(cancelTokens, submitted, index + 1);
+        }
+    }
+
+    private void cancel(CancelToken[] cancelTokens, AtomicReferenceArray<Future<?>> submitted, int from) {
+        for (int i = from; i < cancelTokens.length; i++) {
+            if (cancelTokens[i] != null && cancelTokens[i].cancel()) {
+                Future<?> future = submitted.get(i);
+                if (future != null) {
+                    future.cancel(true);
+                }
+            }
+        }
+    }
+
+    /**
+     * A sequential dag only waits as long as the chain would, unless it was given a timeout
+     */
+    private boolean unbounded() {
+        return sequential && theadHelper.getTimeout() <= 0;
+    }
+
+    private Object complete(List<Info> infoListExe, boolean completed, CancelToken[] cancelTokens,
+                            AtomicReferenceArray<Future<?>> submitted, AtomicReferenceArray<Object> results, AtomicInteger halted) {
+        if (sequential) {
+            if (!completed) {
+                cancel(cancelTokens, submitted, 0);
+                throw timeout((ContextBus) getContextBus());
+            }
+            return chainResult(infoListExe, results, halted.get());
+        }
+        if (!completed && hasOption(GatewayOption.CANCEL_ON_TIMEOUT)) {
+            for (Info info : infoListExe) {
+                int i = indexes.get(info);
+                if (cancelTokens[i] != null && cancelTokens[i].cancel()) {
+                    Future<?> future = submitted.get(i);
+                    if (future != null) {
+                        future.cancel(true);
+                    }
+                    ((ContextBus) getContextBus()).putException(info, new TimeoutException("node execute timeout: " + info.getIdOrAlias()));
+                }
+            }
+            mergeRunIds();
+            return handle(infoListExe, false);
+        }
+        mergeRunIds();
+        return handle(infoListExe, !completed);
+    }
+
+    /**
+     * Outcome of a sequential dag as the chain would leave it: the first failure in chain order is rethrown, a stop or
+     * rollback returns null, otherwise the last non-null node result. Node results are added to the conditions again
+     * in chain order, so a later node wins over an earlier one that completed after it
+     */
+    private Object chainResult(List<Info> infoListExe, AtomicReferenceArray<Object> results, int halted) {
+        ContextBus contextBus = (ContextBus) getContextBus();
+        Object result = null;
+        for (Info info : infoListExe) {
+            int index = indexes.get(info);
+            if (index > halted) {
+                break;
+            }
+            Exception e = contextBus.getException(info.getIdOrAlias());
+            if (e != null) {
+                throw e instanceof RuntimeException ? (RuntimeException) e : new RuntimeException(e);
+            }
+            if (results.get(index) != null) {
+                result = results.get(index);
+                flowNodeManager.addConditions(contextBus, info.getIdOrAlias(), result);
+            }
+            if (index == halted) {
+                break;
+            }
+        }
+        if (isSuspend(contextBus)) {
+            return null;
+        }
+        mergeRunIds();
+        return result;
+    }
+}
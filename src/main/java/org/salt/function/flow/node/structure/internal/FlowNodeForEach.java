@@ -0,0 +1,194 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.salt.function.flow.node.structure.internal;
+
+import lombok.extern.slf4j.Slf4j;
+import org.salt.function.flow.Info;
+import org.salt.function.flow.context.ContextBus;
+import org.salt.function.flow.context.IContextBus;
+import org.salt.function.flow.node.structure.FlowNodeStructure;
+import org.salt.function.flow.thread.CancelToken;
+import org.salt.function.flow.thread.TheadHelper;
+import org.springframework.util.CollectionUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * Scatter-gather over a collection: the items, or chunks of items, are processed in parallel on the gateway executor,
+ * each one running the branches with the item as input on its own copy of the context bus, so branch selection,
+ * results and conditions do not leak from one item to another. What the items write is merged back in item order
+ * once they have all completed, and the result of each item is handed to the combiner in item order. A failed or
+ * timed out item cancels the others and fails the gateway.
+ */
+@Slf4j
+public class FlowNodeForEach extends FlowNodeStructure<Object> {
+
+    private final Function<Object, ? extends Collection<?>> items;
+
+    private final int chunkSize;
+
+    private final Function<List<Object>, ?> combiner;
+
+    public FlowNodeForEach(Function<Object, ? extends Collection<?>> items, int chunkSize, Function<List<Object>, ?> combiner) {
+        this.items = items;
+        this.chunkSize = chunkSize;
+        this.combiner = combiner;
+    }
+
+    @Override
+    public Object process(Object input) {
+        List<Object> chunks = chunks(input);
+        ContextBus contextBus = (ContextBus) getContextBus();
+        ContextBus base = contextBus.copy();
+        CancelToken[] cancelTokens = new CancelToken[chunks.size()];
+        ContextBus[] chunkBuses = new ContextBus[chunks.size()];
+        Future<?>[] futures = new Future<?>[chunks.size()];
+        for (int i = 0; i < chunks.size(); i++) {
+            Object chunk = chunks.get(i);
+            CancelToken cancelToken = CancelToken.fork();
+            ContextBus chunkBus = contextBus.copy();
+            cancelTokens[i] = cancelToken;
+            chunkBuses[i] = chunkBus;
+            futures[i] = theadHelper.submit(() -> executeChunk(cancelToken, chunkBus, chunk));
+        }
+        List<Object> results;
+        try {
+            results = joinTasks(futures, cancelTokens, contextBus);
+        } finally {
+            merge(contextBus, base, chunkBuses, futures);
+        }
+        return results == null || isSuspend(contextBus) ? null : combine(results);
+    }
+
+    @Override
+    public CompletableFuture<Object> processAsync(Object input) {
+        List<Object> chunks;
+        try {
+            chunks = chunks(input);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        ContextBus contextBus = (ContextBus) getContextBus();
+        ContextBus base = contextBus.copy();
+        TheadHelper.Snapshot snapshot = TheadHelper.capture();
+        CancelToken[] cancelTokens = new CancelToken[chunks.size()];
+        ContextBus[] chunkBuses = new ContextBus[chunks.size()];
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[chunks.size()];
+        for (int i = 0; i < chunks.size(); i++) {
+            Object chunk = chunks.get(i);
+            CancelToken cancelToken = CancelToken.fork();
+            ContextBus chunkBus = contextBus.copy();
+            cancelTokens[i] = cancelToken;
+            chunkBuses[i] = chunkBus;
+            futures[i] = theadHelper.submitAsync(() -> executeChunk(cancelToken, chunkBus, chunk));
+        }
+        return CompletableFuture.allOf(futures)
+                .orTimeout(theadHelper.getTimeout(), TimeUnit.MILLISECONDS)
+                .handleAsync((v, e) -> snapshot.call(() -> {
+                    if (e != null) {
+                        cancelTasks(futures, cancelTokens);
+                    }
+                    merge(contextBus, base, chunkBuses, futures);
+                    if (e != null) {
+                        throw new CompletionException(cause(e) instanceof TimeoutException ? timeout(contextBus) : cause(e));
+                    }
+                    if (isSuspend(contextBus)) {
+                        return null;
+                    }
+                    List<Object> results = new ArrayList<>(futures.length);
+                    for (CompletableFuture<?> future : futures) {
+                        results.add(future.join());
+                    }
+                    return combine(results);
+                }), theadHelper.getExecutor());
+    }
+
+    /**
+     * Branches are selected per item, see {@link #process(Object)}
+     */
+    @Override
+    protected Object doProcessGateway(List<Info> infoList) {
+        throw new RuntimeException("forEach branches run per item. nodeId:" + nodeId);
+    }
+
+    /**
+     * Run the branches selected for the chunk one after the other on the chunk's copy of the context bus,
+     * the chunk result is the last branch result
+     */
+    private Object executeChunk(CancelToken cancelToken, ContextBus contextBus, Object chunk) {
+        cancelToken.install();
+        try {
+            TheadHelper.putThreadLocal(IContextBus.class.getName(), contextBus);
+            contextBus.putPreResult(chunk);
+            List<Info> infoListExe = select(chunk);
+            Object result = null;
+            if (!CollectionUtils.isEmpty(infoListExe)) {
+                for (Info info : infoListExe) {
+                    try {
+                        result = execute(info);
+                    } catch (Exception e) {
+                        putException(contextBus, cancelToken, info, e);
+                        throw e;
+                    }
+                    if (isSuspend(contextBus)) {
+                        break;
+                    }
+                }
+            }
+            return result;
+        } finally {
+            cancelToken.done();
+        }
+    }
+
+    /**
+     * Merge back what the completed items wrote, in item order
+     */
+    private static void merge(ContextBus contextBus, ContextBus base, ContextBus[] chunkBuses, Future<?>[] futures) {
+        for (int i = 0; i < chunkBuses.length; i++) {
+            if (futures[i].isDone() && !futures[i].isCancelled()) {
+                contextBus.merge(chunkBuses[i], base);
+            }
+        }
+    }
+
+    private List<Object> chunks(Object input) {
+        Collection<?> collection = items != null ? items.apply(input) : input instanceof Collection ? (Collection<?>) input : null;
+        if (collection == null) {
+            throw new RuntimeException("forEach items must be a collection. nodeId:" + nodeId);
+        }
+        List<Object> list = new ArrayList<>(collection);
+        if (chunkSize <= 1) {
+            return list;
+        }
+        List<Object> chunks = new ArrayList<>((list.size() + chunkSize - 1) / chunkSize);
+        for (int i = 0; i < list.size(); i += chunkSize) {
+            chunks.add(new ArrayList<>(list.subList(i, Math.min(list.size(), i + chunkSize))));
+        }
+        return chunks;
+    }
+
+    private Object combine(List<Object> results) {
+        return combiner != null ? combiner.apply(results) : results;
+    }
+}
@@ -32,11 +32,11 @@ public class FlowNodeFuture<O> extends FlowNodeStructure<O> {
                 try {
                     return execute(info);
                 } catch (Exception e) {
-                    ((ContextBus) getContextBus()).putException(info.getIdOrAlias(), e);
+                    ((ContextBus) getContextBus()).putException(info, e);
                 }
                 return null;
             });
-            ((ContextBus) getContextBus()).putResult(info.getIdOrAlias(), future);
+            ((ContextBus) getContextBus()).putResult(info, future);
         }
         return null;
     }
@@ -0,0 +1,194 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.salt.function.flow.node.structure.internal;
+
+import lombok.extern.slf4j.Slf4j;
+import org.salt.function.flow.Info;
+import org.salt.function.flow.context.ContextBus;
+import org.salt.function.flow.node.structure.FlowNodeStructure;
+import org.salt.function.flow.thread.CancelToken;
+import org.salt.function.flow.thread.TheadHelper;
+import org.salt.function.flow.util.LatencyHistogram;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Runs the primary branch (the first info) and, once it has been running longer than its observed p95 latency,
+ * starts the backup branch (the second info, or the primary again), continuing with whichever returns a result first.
+ * The loser is cancelled. Latencies are kept per primary node, so gateways hedging on the same node share them;
+ * until {@link #MIN_SAMPLES} latencies of the primary are recorded no backup is started.
+ */
+@Slf4j
+public class FlowNodeHedge extends FlowNodeStructure<Object> {
+
+    static final int MIN_SAMPLES = 20;
+
+    private static final double HEDGE_PERCENTILE = 0.95;
+
+    @Override
+    public Object doProcessGateway(List<Info> infoList) {
+        Hedge hedge = new Hedge(infoList);
+        hedge.launch(0);
+        if (isSuspend(hedge.contextBus)) {
+            hedge.cancel(false);
+            return null;
+        }
+        long timeout = TimeUnit.MILLISECONDS.toMicros(theadHelper.getTimeout());
+        long delay = hedgeDelay(hedge.latency);
+        try {
+            Object result;
+            if (delay >= 0 && delay < timeout) {
+                try {
+                    result = hedge.winner.get(delay, TimeUnit.MICROSECONDS);
+                } catch (TimeoutException e) {
+                    hedge.launch(1);
+                    result = hedge.winner.get(timeout - delay, TimeUnit.MICROSECONDS);
+                }
+            } else {
+                result = hedge.winner.get(timeout, TimeUnit.MICROSECONDS);
+            }
+            hedge.cancel(false);
+            mergeRunIds();
+            return result;
+        } catch (TimeoutException e) {
+            log.warn("Node execute timeout: {}", nodeId);
+            hedge.cancel(true);
+        } catch (InterruptedException | ExecutionException e) {
+            hedge.cancel(false);
+            hedge.contextBus.putException(nodeId, e);
+        }
+        return null;
+    }
+
+    @Override
+    protected CompletableFuture<Object> doProcessGatewayAsync(List<Info> infoList) {
+        Hedge hedge = new Hedge(infoList);
+        TheadHelper.Snapshot snapshot = TheadHelper.capture();
+        hedge.launch(0);
+        if (isSuspend(hedge.contextBus)) {
+            hedge.cancel(false);
+            return CompletableFuture.completedFuture(null);
+        }
+        long delay = hedgeDelay(hedge.latency);
+        if (delay >= 0) {
+            // the backup starts while the flow may already continue on the gateway context, so it gets its own
+            TheadHelper.Snapshot backup = TheadHelper.fork();
+            CompletableFuture.delayedExecutor(delay, TimeUnit.MICROSECONDS, theadHelper.getExecutor())
+                    .execute(() -> backup.call(() -> hedge.launch(1)));
+        }
+        return hedge.winner
+                .orTimeout(theadHelper.getTimeout(), TimeUnit.MILLISECONDS)
+                .handleAsync((result, e) -> snapshot.call(() -> {
+                    if (e != null) {
+                        log.warn("Node execute timeout: {}", nodeId);
+                        hedge.cancel(true);
+                        return null;
+                    }
+                    hedge.cancel(false);
+                    mergeRunIds();
+                    return result;
+                }), theadHelper.getExecutor());
+    }
+
+    /**
+     * Microseconds to wait for the primary before starting the backup, -1 while too few latencies are recorded
+     */
+    private static long hedgeDelay(LatencyHistogram latency) {
+        if (latency.count() < MIN_SAMPLES) {
+            return -1;
+        }
+        return Math.max(1, latency.percentile(HEDGE_PERCENTILE));
+    }
+
+    /**
+     * Id of the node an info runs: a registered node's id, a function's class, or a sub flow's id
+     */
+    private static String nodeId(Info info) {
+        if (info.getTarget() != null && info.getTarget().getNodeId() != null) {
+            return info.getTarget().getNodeId();
+        }
+        return info.getId();
+    }
+
+    /**
+     * State of one gateway execution: the primary and backup branches and the first result
+     */
+    private class Hedge {
+
+        private final List<Info> infos;
+
+        /**
+         * Primary latency in microseconds, a primary cancelled after losing counts with the time it ran
+         */
+        private final LatencyHistogram latency;
+
+        private final ContextBus contextBus = (ContextBus) getContextBus();
+
+        private final CancelToken[] cancelTokens = new CancelToken[2];
+
+        private final Future<?>[] futures = new Future<?>[2];
+
+        private final CompletableFuture<Object> winner = new CompletableFuture<>();
+
+        private final AtomicInteger pending = new AtomicInteger();
+
+        private boolean cancelled;
+
+        private Hedge(List<Info> infoList) {
+            this.infos = List.of(infoList.get(0), infoList.size() > 1 ? infoList.get(1) : infoList.get(0));
+            this.latency = flowNodeManager.getNodeLatency(nodeId(infos.get(0)));
+        }
+
+        private synchronized Void launch(int index) {
+            if (cancelled || winner.isDone()) {
+                return null;
+            }
+            Info info = infos.get(index);
+            CancelToken cancelToken = CancelToken.fork();
+            long start = System.nanoTime();
+            pending.incrementAndGet();
+            CompletableFuture<CompletableFuture<Object>> branch = theadHelper.submitAsync(() -> {
+                cancelToken.install();
+                return executeAsync(info);
+            });
+            futures[index] = branch;
+            cancelTokens[index] = cancelToken;
+            branch.thenCompose(Function.identity()).whenComplete((result, e) -> {
+                if (index == 0 && (e == null || cancelToken.isCancelled())) {
+                    latency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                }
+                if (e != null) {
+                    putException(contextBus, cancelToken, info, cause(e));
+                }
+                cancelToken.done();
+                if (e == null && result != null) {
+                    winner.complete(result);
+                }
+                if (pending.decrementAndGet() == 0) {
+                    winner.complete(null);
+                }
+            });
+            return null;
+        }
+
+        private synchronized void cancel(boolean isTimeout) {
+            cancelled = true;
+            cancelBranches(infos, cancelTokens, futures, isTimeout);
+        }
+    }
+}
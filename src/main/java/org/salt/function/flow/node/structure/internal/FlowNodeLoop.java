@@ -19,39 +19,152 @@ import org.salt.function.flow.Info;
 import org.salt.function.flow.context.ContextBus;
 import org.salt.function.flow.context.IContextBus;
 import org.salt.function.flow.node.structure.FlowNodeStructure;
+import org.salt.function.flow.thread.CancelToken;
+import org.salt.function.flow.thread.TheadHelper;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
 @Slf4j
-public class FlowNodeLoop extends FlowNodeStructure<Void> {
+public class FlowNodeLoop extends FlowNodeStructure<Object> {
 
     Function<Integer, Boolean> loopCondition;
 
+    /**
+     * Iterations running at once, 1 runs them one after the other on the calling thread
+     */
+    int parallelism;
+
     public FlowNodeLoop(Function<Integer, Boolean> loopCondition) {
+        this(loopCondition, 1);
+    }
+
+    public FlowNodeLoop(Function<Integer, Boolean> loopCondition, int parallelism) {
         this.loopCondition = loopCondition;
+        this.parallelism = parallelism;
     }
 
+    /**
+     * Run the iterations while the condition holds for the next index, the index of the running iteration is
+     * readable from {@link IContextBus#getLoopIndex()}. The sequential loop returns null, so the next node gets the
+     * result of the last iteration as its input; the parallel loop returns the iteration results in index order
+     */
     @Override
-    public Void doProcessGateway(List<Info> infoList) {
-        IContextBus iContextBus = getContextBus();
-        int i = 0;
-        while(loopCondition.apply(i)) {
+    public Object doProcessGateway(List<Info> infoList) {
+        ContextBus contextBus = (ContextBus) getContextBus();
+        Integer outerIndex = contextBus.getLoopIndex();
+        try {
+            if (parallelism > 1) {
+                return doProcessParallel(infoList);
+            }
+            int i = 0;
+            while(loopCondition.apply(i)) {
+                contextBus.setLoopIndex(i);
+                for (Info info : infoList) {
+                    try {
+                        execute(info);
+                    } catch (Exception e) {
+                        contextBus.putException(info, e);
+                        throw e;
+                    }
+                    if (isSuspend(contextBus)) {
+                        return null;
+                    }
+                }
+                i++;
+            }
+            mergeRunIds();
+            return null;
+        } finally {
+            contextBus.setLoopIndex(outerIndex);
+        }
+    }
+
+    /**
+     * Keep up to {@code parallelism} iterations in flight, the next one starts as soon as one completes and the
+     * condition holds for its index; no further iteration starts once one fails or stops the flow. Every iteration
+     * runs with the loop input as input on its own copy of the context bus, what the iterations write is merged back
+     * in index order once they have all completed. The result is the list of iteration results in index order, the
+     * last branch result of each iteration
+     */
+    private List<Object> doProcessParallel(List<Info> infoList) {
+        ContextBus contextBus = (ContextBus) getContextBus();
+        ContextBus base = contextBus.copy();
+        Object input = contextBus.getPreResult();
+        List<CancelToken> cancelTokens = new ArrayList<>();
+        List<Future<?>> futures = new ArrayList<>();
+        List<ContextBus> iterations = new ArrayList<>();
+        Semaphore window = new Semaphore(parallelism);
+        AtomicBoolean halted = new AtomicBoolean();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(theadHelper.getTimeout());
+        List<Object> results = null;
+        try {
+            for (int i = 0; !halted.get() && !isSuspend(contextBus) && loopCondition.apply(i); i++) {
+                if (!window.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                    cancelTasks(futures.toArray(new Future<?>[0]), cancelTokens.toArray(new CancelToken[0]));
+                    throw timeout(contextBus);
+                }
+                int index = i;
+                CancelToken cancelToken = CancelToken.fork();
+                ContextBus iteration = contextBus.copy();
+                CompletableFuture<Object> future = theadHelper.submitAsync(() -> executeIteration(cancelToken, iteration, index, input, infoList));
+                future.whenComplete((result, e) -> {
+                    if (e != null || isSuspend(iteration)) {
+                        halted.set(true);
+                    }
+                    window.release();
+                });
+                cancelTokens.add(cancelToken);
+                futures.add(future);
+                iterations.add(iteration);
+            }
+            results = joinTasks(futures.toArray(new Future<?>[0]), cancelTokens.toArray(new CancelToken[0]), contextBus);
+        } catch (InterruptedException e) {
+            cancelTasks(futures.toArray(new Future<?>[0]), cancelTokens.toArray(new CancelToken[0]));
+            Thread.currentThread().interrupt();
+            contextBus.putException(nodeId, e);
+        } finally {
+            for (int i = 0; i < iterations.size(); i++) {
+                if (futures.get(i).isDone() && !futures.get(i).isCancelled()) {
+                    contextBus.merge(iterations.get(i), base);
+                }
+            }
+        }
+        if (results == null || isSuspend(contextBus)) {
+            return null;
+        }
+        mergeRunIds();
+        return results;
+    }
+
+    private Object executeIteration(CancelToken cancelToken, ContextBus iteration, int index, Object input, List<Info> infoList) {
+        cancelToken.install();
+        try {
+            TheadHelper.putThreadLocal(IContextBus.class.getName(), iteration);
+            iteration.putPreResult(input);
+            iteration.setLoopIndex(index);
+            Object result = null;
             for (Info info : infoList) {
                 try {
-                    execute(info);
+                    result = execute(info);
                 } catch (Exception e) {
-                    ((ContextBus) iContextBus).putException(info.getIdOrAlias(), e);
+                    putException(iteration, cancelToken, info, e);
                     throw e;
                 }
-                if (isSuspend(iContextBus)) {
-                    return null;
+                if (isSuspend(iteration)) {
+                    break;
                 }
             }
-            i++;
+            return result;
+        } finally {
+            cancelToken.done();
         }
-        mergeRunIds();
-        return null;
     }
 }
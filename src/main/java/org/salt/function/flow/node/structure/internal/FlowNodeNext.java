@@ -19,8 +19,16 @@ import org.salt.function.flow.Info;
 import org.salt.function.flow.context.ContextBus;
 import org.salt.function.flow.context.IContextBus;
 import org.salt.function.flow.node.structure.FlowNodeStructure;
+import org.salt.function.flow.thread.TheadHelper;
+import org.springframework.util.CollectionUtils;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @Slf4j
 public class FlowNodeNext extends FlowNodeStructure<Void> {
@@ -32,11 +40,65 @@ public class FlowNodeNext extends FlowNodeStructure<Void> {
             try {
                 execute(info);
             } catch (Exception e) {
-                ((ContextBus) iContextBus).putException(info.getIdOrAlias(), e);
+                ((ContextBus) iContextBus).putException(info, e);
                 throw e;
             }
             return null;
         }
         return null;
     }
+
+    @Override
+    protected CompletableFuture<Void> doProcessGatewayAsync(List<Info> infoList) {
+        ContextBus contextBus = (ContextBus) getContextBus();
+        Info info = infoList.get(0);
+        return executeAsync(info).handle((result, e) -> {
+            if (e != null) {
+                contextBus.putException(info, cause(e));
+                throw new CompletionException(cause(e));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Runs taking the same branch execute it together, so a batch node on that branch is called once for all of them
+     */
+    @Override
+    public List<Void> processBatch(List<Object> inputs, List<TheadHelper.Snapshot> contexts) {
+        Map<Integer, List<TheadHelper.Snapshot>> branches = new TreeMap<>();
+        for (int i = 0; i < inputs.size(); i++) {
+            Object input = inputs.get(i);
+            Info info = contexts.get(i).call(() -> {
+                List<Info> infoListExe = select(input);
+                return CollectionUtils.isEmpty(infoListExe) ? null : infoListExe.get(0);
+            });
+            for (int branch = 0; info != null && branch < infoList.size(); branch++) {
+                if (infoList.get(branch) == info) {
+                    branches.computeIfAbsent(branch, k -> new ArrayList<>()).add(contexts.get(i));
+                    break;
+                }
+            }
+        }
+        branches.forEach((branch, branchContexts) -> {
+            Info info = infoList.get(branch);
+            if (info.getTarget() == null && info.getTargetFlow() == null) {
+                flowEngine.resolve(info);
+            }
+            if (info.getTarget() != null) {
+                try {
+                    flowNodeManager.executeBatch(info.getTarget(), info, branchContexts);
+                } catch (Exception e) {
+                    branchContexts.forEach(context -> context.call(() -> {
+                        ((ContextBus) getContextBus()).putException(info, e);
+                        return null;
+                    }));
+                    throw e;
+                }
+            } else {
+                branchContexts.forEach(context -> context.call(() -> doProcessGateway(List.of(info))));
+            }
+        });
+        return Collections.nCopies(inputs.size(), null);
+    }
 }
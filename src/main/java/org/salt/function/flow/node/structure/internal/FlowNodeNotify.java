@@ -34,7 +34,7 @@ public class FlowNodeNotify extends FlowNodeStructure<Void> {
                     TheadHelper.putThreadLocal(IContextBus.class.getName(), contextBus);
                     execute(info);
                 } catch (Exception e) {
-                    ((ContextBus) iContextBus).putException(info.getIdOrAlias(), e);
+                    ((ContextBus) iContextBus).putException(info, e);
                 }
             });
         }
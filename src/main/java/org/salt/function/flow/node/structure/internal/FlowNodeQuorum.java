@@ -0,0 +1,171 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.salt.function.flow.node.structure.internal;
+
+import lombok.extern.slf4j.Slf4j;
+import org.salt.function.flow.GatewayOption;
+import org.salt.function.flow.Info;
+import org.salt.function.flow.context.ContextBus;
+import org.salt.function.flow.node.structure.FlowNodeStructure;
+import org.salt.function.flow.thread.CancelToken;
+import org.salt.function.flow.thread.TheadHelper;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Runs the branches in parallel like concurrent, and returns as soon as {@code quorum} of them have succeeded,
+ * or as soon as that is no longer possible. Like race, a branch succeeds when it returns a non-null result,
+ * a branch that fails or returns null counts against the quorum. The result map has the shape of concurrent's, holding the branches
+ * finished by then. Remaining branches finish in the background, or are cancelled with
+ * {@link GatewayOption#CANCEL_REMAINING}.
+ */
+@Slf4j
+public class FlowNodeQuorum extends FlowNodeStructure<Map<String, Object>> {
+
+    private final int quorum;
+
+    public FlowNodeQuorum(int quorum) {
+        this.quorum = quorum;
+    }
+
+    @Override
+    public Map<String, Object> doProcessGateway(List<Info> infoList) {
+        Quorum state = new Quorum(infoList, false);
+        if (isSuspend(state.contextBus)) {
+            return null;
+        }
+        try {
+            state.reached.get(theadHelper.getTimeout(), TimeUnit.MILLISECONDS);
+            return state.complete(false);
+        } catch (TimeoutException e) {
+            return state.complete(true);
+        } catch (InterruptedException | ExecutionException e) {
+            state.contextBus.putException(nodeId, e);
+        }
+        return null;
+    }
+
+    @Override
+    protected CompletableFuture<Map<String, Object>> doProcessGatewayAsync(List<Info> infoList) {
+        TheadHelper.Snapshot snapshot = TheadHelper.capture();
+        Quorum state = new Quorum(infoList, true);
+        if (isSuspend(state.contextBus)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return state.reached
+                .orTimeout(theadHelper.getTimeout(), TimeUnit.MILLISECONDS)
+                .handleAsync((reached, e) -> snapshot.call(() -> state.complete(e != null)), theadHelper.getExecutor());
+    }
+
+    /**
+     * State of one gateway execution, branches are submitted on creation: run on the executor like concurrent's,
+     * or through continuations for an async execution
+     */
+    private class Quorum {
+
+        private final List<Info> infoList;
+
+        private final ContextBus contextBus = (ContextBus) getContextBus();
+
+        private final boolean cancelRemaining = hasOption(GatewayOption.CANCEL_REMAINING);
+
+        private final CancelToken[] cancelTokens;
+
+        private final Future<?>[] futures;
+
+        /**
+         * Completes with whether the quorum was reached
+         */
+        private final CompletableFuture<Boolean> reached = new CompletableFuture<>();
+
+        private final AtomicInteger succeeded = new AtomicInteger();
+
+        private final AtomicInteger failed = new AtomicInteger();
+
+        private Quorum(List<Info> infoList, boolean async) {
+            this.infoList = infoList;
+            this.cancelTokens = new CancelToken[infoList.size()];
+            this.futures = new Future<?>[infoList.size()];
+            for (int i = 0; i < infoList.size(); i++) {
+                Info info = infoList.get(i);
+                CancelToken cancelToken = cancelRemaining ? CancelToken.fork() : null;
+                cancelTokens[i] = cancelToken;
+                if (async) {
+                    CompletableFuture<CompletableFuture<Object>> branch = theadHelper.submitAsync(() -> {
+                        if (cancelToken != null) {
+                            cancelToken.install();
+                        }
+                        return executeAsync(info);
+                    });
+                    futures[i] = branch;
+                    branch.thenCompose(Function.identity()).whenComplete((result, e) -> {
+                        if (e != null) {
+                            putException(contextBus, cancelToken, info, cause(e));
+                        }
+                        finish(cancelToken, e == null ? result : null);
+                    });
+                } else {
+                    futures[i] = theadHelper.submit(() -> {
+                        if (cancelToken != null) {
+                            cancelToken.install();
+                        }
+                        Object result = null;
+                        try {
+                            result = execute(info);
+                        } catch (Exception e) {
+                            putException(contextBus, cancelToken, info, e);
+                        } finally {
+                            finish(cancelToken, result);
+                        }
+                        return null;
+                    });
+                }
+            }
+        }
+
+        /**
+         * Count a finished branch, a null result counts as a failure
+         */
+        private void finish(CancelToken cancelToken, Object result) {
+            if (cancelToken != null) {
+                cancelToken.done();
+            }
+            int ok = result != null ? succeeded.incrementAndGet() : succeeded.get();
+            int ko = result != null ? failed.get() : failed.incrementAndGet();
+            if (ok >= quorum) {
+                reached.complete(true);
+            } else if (infoList.size() - ko < quorum || ok + ko == infoList.size()) {
+                reached.complete(false);
+            }
+        }
+
+        private Map<String, Object> complete(boolean isTimeout) {
+            if (cancelRemaining) {
+                cancelBranches(infoList, cancelTokens, futures, isTimeout);
+            }
+            if (isTimeout) {
+                log.warn("Node execute timeout: {}", nodeId);
+            } else if (!reached.join()) {
+                log.warn("Node quorum not reached: {}, quorum:{}", nodeId, quorum);
+            }
+            mergeRunIds();
+            return handle(infoList, false);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.salt.function.flow.node.structure.internal;
+
+import lombok.extern.slf4j.Slf4j;
+import org.salt.function.flow.Info;
+import org.salt.function.flow.context.ContextBus;
+import org.salt.function.flow.node.structure.FlowNodeStructure;
+import org.salt.function.flow.thread.CancelToken;
+import org.salt.function.flow.thread.TheadHelper;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Runs the branches in parallel and continues with the first non-null branch result, the other branches are cancelled.
+ * Returns null when every branch ends without a result; on timeout the unfinished branches are recorded as timed out.
+ */
+@Slf4j
+public class FlowNodeRace extends FlowNodeStructure<Object> {
+
+    @Override
+    public Object doProcessGateway(List<Info> infoList) {
+        ContextBus contextBus = (ContextBus) getContextBus();
+        CancelToken[] cancelTokens = new CancelToken[infoList.size()];
+        Future<?>[] futures = new Future<?>[infoList.size()];
+        CompletableFuture<Object> winner = new CompletableFuture<>();
+        AtomicInteger remaining = new AtomicInteger(infoList.size());
+        for (int i = 0; i < infoList.size(); i++) {
+            Info info = infoList.get(i);
+            CancelToken cancelToken = CancelToken.fork();
+            cancelTokens[i] = cancelToken;
+            futures[i] = theadHelper.submit(() -> {
+                cancelToken.install();
+                Object result = null;
+                try {
+                    result = execute(info);
+                } catch (Exception e) {
+                    putException(contextBus, cancelToken, info, e);
+                } finally {
+                    cancelToken.done();
+                    offer(winner, remaining, result);
+                }
+                return null;
+            });
+        }
+        if (isSuspend(contextBus)) {
+            cancelBranches(infoList, cancelTokens, futures, false);
+            return null;
+        }
+        try {
+            Object result = winner.get(theadHelper.getTimeout(), TimeUnit.MILLISECONDS);
+            cancelBranches(infoList, cancelTokens, futures, false);
+            mergeRunIds();
+            return result;
+        } catch (TimeoutException e) {
+            log.warn("Node execute timeout: {}", nodeId);
+            cancelBranches(infoList, cancelTokens, futures, true);
+        } catch (InterruptedException | ExecutionException e) {
+            cancelBranches(infoList, cancelTokens, futures, false);
+            contextBus.putException(nodeId, e);
+        }
+        return null;
+    }
+
+    @Override
+    protected CompletableFuture<Object> doProcessGatewayAsync(List<Info> infoList) {
+        ContextBus contextBus = (ContextBus) getContextBus();
+        TheadHelper.Snapshot snapshot = TheadHelper.capture();
+        CancelToken[] cancelTokens = new CancelToken[infoList.size()];
+        Future<?>[] futures = new Future<?>[infoList.size()];
+        CompletableFuture<Object> winner = new CompletableFuture<>();
+        AtomicInteger remaining = new AtomicInteger(infoList.size());
+        for (int i = 0; i < infoList.size(); i++) {
+            Info info = infoList.get(i);
+            CancelToken cancelToken = CancelToken.fork();
+            cancelTokens[i] = cancelToken;
+            CompletableFuture<CompletableFuture<Object>> branch = theadHelper.submitAsync(() -> {
+                cancelToken.install();
+                return executeAsync(info);
+            });
+            futures[i] = branch;
+            branch.thenCompose(Function.identity()).whenComplete((result, e) -> {
+                if (e != null) {
+                    putException(contextBus, cancelToken, info, cause(e));
+                }
+                cancelToken.done();
+                offer(winner, remaining, e == null ? result : null);
+            });
+        }
+        if (isSuspend(contextBus)) {
+            cancelBranches(infoList, cancelTokens, futures, false);
+            return CompletableFuture.completedFuture(null);
+        }
+        return winner
+                .orTimeout(theadHelper.getTimeout(), TimeUnit.MILLISECONDS)
+                .handleAsync((result, e) -> snapshot.call(() -> {
+                    if (e != null) {
+                        log.warn("Node execute timeout: {}", nodeId);
+                        cancelBranches(infoList, cancelTokens, futures, true);
+                        return null;
+                    }
+                    cancelBranches(infoList, cancelTokens, futures, false);
+                    mergeRunIds();
+                    return result;
+                }), theadHelper.getExecutor());
+    }
+
+    private static void offer(CompletableFuture<Object> winner, AtomicInteger remaining, Object result) {
+        if (result != null) {
+            winner.complete(result);
+        }
+        if (remaining.decrementAndGet() == 0) {
+            winner.complete(null);
+        }
+    }
+}
@@ -32,19 +32,19 @@ public class FlowNodeWait extends FlowNodeStructure<Map<String, Object>> {
         long lastTimeout = theadHelper.getTimeout();
         for (Info info : infoList) {
             if (lastTimeout <= 0) {
-                ((ContextBus) iContextBus).putException(info.getIdOrAlias(), new RuntimeException("beyond maxTimeout"));
+                ((ContextBus) iContextBus).putException(info, new RuntimeException("beyond maxTimeout"));
                 return handle(infoList, true);
             }
             long start = System.currentTimeMillis();
             try {
                 Object result = ((ContextBus) iContextBus).getResult(info.getIdOrAlias(), lastTimeout);
                 if (result != null) {
-                    ((ContextBus) iContextBus).putResult(info.getIdOrAlias(), result);
+                    ((ContextBus) iContextBus).putResult(info, result);
                 } else {
                     ((ContextBus) iContextBus).removeResult(info.getIdOrAlias());
                 }
             } catch (Exception e) {
-                ((ContextBus) iContextBus).putException(info.getIdOrAlias(), e);
+                ((ContextBus) iContextBus).putException(info, e);
             }
             lastTimeout -= System.currentTimeMillis() - start;
         }
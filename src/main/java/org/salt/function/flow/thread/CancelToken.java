@@ -0,0 +1,174 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.salt.function.flow.thread;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Cancellation signal of a gateway branch, kept in the branch thread context so nodes and nested gateways
+ * running for the branch see it. A token is cancelled when it or any enclosing branch is cancelled.
+ * Writes of a branch go through {@link #commit(Runnable)}: a cancellation either happens before a write,
+ * which is then skipped, or waits for it to finish.
+ */
+public final class CancelToken {
+
+    private static final String KEY = CancelToken.class.getName();
+
+    private static final int CANCELLED = 1 << 30;
+
+    private static final int DONE = 1 << 29;
+
+    private static final int COMMITS = DONE - 1;
+
+    /**
+     * Spins a cancel waits for writes in progress before parking, writes are short but may log
+     */
+    private static final int SPINS = 64;
+
+    private final CancelToken parent;
+
+    /**
+     * Cancelled and done flags, and the number of writes in progress for this branch or any inner one,
+     * so cancelling an outer branch also waits for writes of inner ones
+     */
+    private final AtomicInteger state = new AtomicInteger();
+
+    /**
+     * Thread parked in {@link #cancel()} until the writes in progress finish, only the cancelling thread sets it
+     */
+    private volatile Thread waiter;
+
+    private CancelToken(CancelToken parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * New token for a branch started from the current thread, child of the current branch token if any
+     */
+    public static CancelToken fork() {
+        return new CancelToken(current());
+    }
+
+    public static CancelToken current() {
+        return TheadHelper.getThreadLocal(KEY);
+    }
+
+    /**
+     * Whether the branch running on the current thread has been cancelled
+     */
+    public static boolean cancelled() {
+        CancelToken cancelToken = current();
+        return cancelToken != null && cancelToken.isCancelled();
+    }
+
+    public void install() {
+        TheadHelper.putThreadLocal(KEY, this);
+    }
+
+    public boolean isCancelled() {
+        for (CancelToken token = this; token != null; token = token.parent) {
+            if ((token.state.get() & CANCELLED) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Cancel the branch unless it is already done, return whether it was cancelled by this call;
+     * writes already in progress finish before it returns
+     */
+    public boolean cancel() {
+        int current;
+        do {
+            current = state.get();
+            if ((current & (CANCELLED | DONE)) != 0) {
+                return false;
+            }
+        } while (!state.compareAndSet(current, current | CANCELLED));
+        for (int i = 0; i < SPINS; i++) {
+            if ((state.get() & COMMITS) == 0) {
+                return true;
+            }
+            Thread.onSpinWait();
+        }
+        boolean interrupted = false;
+        waiter = Thread.currentThread();
+        try {
+            while ((state.get() & COMMITS) != 0) {
+                LockSupport.park(this);
+                interrupted |= Thread.interrupted();
+            }
+        } finally {
+            waiter = null;
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Mark the branch finished, a later cancel no longer applies to it
+     */
+    public void done() {
+        state.getAndUpdate(current -> (current & CANCELLED) != 0 ? current : current | DONE);
+    }
+
+    /**
+     * Run the write unless the branch or an enclosing one is cancelled, return whether it ran
+     */
+    public boolean commit(Runnable write) {
+        for (CancelToken token = this; token != null; token = token.parent) {
+            if (!token.enter()) {
+                exit(token);
+                return false;
+            }
+        }
+        try {
+            write.run();
+            return true;
+        } finally {
+            exit(null);
+        }
+    }
+
+    private boolean enter() {
+        int current;
+        do {
+            current = state.get();
+            if ((current & CANCELLED) != 0) {
+                return false;
+            }
+        } while (!state.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * Leave the tokens entered by a commit, from this one up to the given one excluded
+     */
+    private void exit(CancelToken until) {
+        for (CancelToken token = this; token != until; token = token.parent) {
+            int current = token.state.decrementAndGet();
+            if ((current & COMMITS) == 0 && (current & CANCELLED) != 0) {
+                Thread cancelling = token.waiter;
+                if (cancelling != null) {
+                    LockSupport.unpark(cancelling);
+                }
+            }
+        }
+    }
+}
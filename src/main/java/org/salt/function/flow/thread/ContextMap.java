@@ -0,0 +1,112 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.salt.function.flow.thread;
+
+import java.util.*;
+
+/**
+ * Copy-on-write thread context: a task forked from a thread shares that thread's entries,
+ * and whichever side writes first copies them, so forking a task does not copy the context.
+ * A context may be installed on other threads through a {@link TheadHelper.Snapshot}, e.g. by the continuation of
+ * a gateway, so its state is guarded by the map itself; once shared the entries are never written in place.
+ */
+final class ContextMap extends AbstractMap<String, Object> {
+
+    private Map<String, Object> map;
+
+    /**
+     * Set once the entries are visible to another context, both sides then copy before writing
+     */
+    private boolean shared;
+
+    ContextMap() {
+        this.map = new HashMap<>();
+    }
+
+    private ContextMap(Map<String, Object> map, boolean shared) {
+        this.map = map;
+        this.shared = shared;
+    }
+
+    static ContextMap fork(Map<String, Object> context) {
+        if (context instanceof ContextMap contextMap) {
+            synchronized (contextMap) {
+                contextMap.shared = true;
+                return new ContextMap(contextMap.map, true);
+            }
+        }
+        return new ContextMap(new HashMap<>(context), false);
+    }
+
+    /**
+     * Copy of a map of any key and value types, so it can be forked like a thread context
+     */
+    @SuppressWarnings("unchecked")
+    static ContextMap copyOf(Map<?, ?> map) {
+        return new ContextMap(new HashMap<>((Map<String, Object>) map), false);
+    }
+
+    private Map<String, Object> writable() {
+        if (shared) {
+            map = new HashMap<>(map);
+            shared = false;
+        }
+        return map;
+    }
+
+    @Override
+    public synchronized Object get(Object key) {
+        return map.get(key);
+    }
+
+    @Override
+    public synchronized boolean containsKey(Object key) {
+        return map.containsKey(key);
+    }
+
+    @Override
+    public synchronized int size() {
+        return map.size();
+    }
+
+    @Override
+    public synchronized Object put(String key, Object value) {
+        if (shared && Objects.equals(map.get(key), value) && (value != null || map.containsKey(key))) {
+            return value;
+        }
+        return writable().put(key, value);
+    }
+
+    @Override
+    public synchronized Object remove(Object key) {
+        if (shared && !map.containsKey(key)) {
+            return null;
+        }
+        return writable().remove(key);
+    }
+
+    @Override
+    public synchronized void clear() {
+        map = new HashMap<>();
+        shared = false;
+    }
+
+    @Override
+    public synchronized Set<Entry<String, Object>> entrySet() {
+        // the view must not see later writes from another thread, so they copy first
+        shared = true;
+        return Collections.unmodifiableMap(map).entrySet();
+    }
+}
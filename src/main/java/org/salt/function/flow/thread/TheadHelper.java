@@ -21,8 +21,10 @@ import org.salt.function.flow.util.FlowUtil;
 
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.function.Supplier;
 
 @Slf4j
 @Data
@@ -37,11 +39,23 @@ public class TheadHelper {
 
     private static List<ThreadLocal<?>> threadLocalUsers = new ArrayList<>();
 
+    /**
+     * Register user thread locals carried into tasks. A map value is handed to tasks copy-on-write like the thread
+     * context: the first task started from a thread copies it once into a map installed back in the thread local,
+     * later tasks share that map until either side writes
+     */
     public static void initThreadLocal(ThreadLocal<?>... threadLocals) {
         threadLocalUsers = new ArrayList<>();
         threadLocalUsers.addAll(Arrays.asList(threadLocals));
     }
 
+    /**
+     * User thread locals carried into tasks, as registered with {@link #initThreadLocal} and {@link #addThreadLocal}
+     */
+    static List<ThreadLocal<?>> getThreadLocalUsers() {
+        return List.copyOf(threadLocalUsers);
+    }
+
     public static synchronized void addThreadLocal(ThreadLocal<?>... threadLocals) {
         if (threadLocalUsers == null) {
             threadLocalUsers = new ArrayList<>();
@@ -51,7 +65,7 @@ public class TheadHelper {
 
     public static Map<String, Object> getThreadLocal() {
         if (threadLocal.get() == null) {
-            threadLocal.set(new HashMap<>());
+            threadLocal.set(new ContextMap());
         }
         return threadLocal.get();
     }
@@ -76,10 +90,104 @@ public class TheadHelper {
         return executor.submit(getDecoratorAsync(task));
     }
 
+    /**
+     * Run the task on the executor with the decorated thread context and expose its outcome as a future,
+     * cancelling the future interrupts the task
+     */
+    public <T> CompletableFuture<T> submitAsync(Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Callable<T> decorated = getDecoratorAsync(task);
+        Future<?> submitted = executor.submit(() -> {
+            try {
+                future.complete(decorated.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        future.whenComplete((result, e) -> {
+            if (future.isCancelled()) {
+                submitted.cancel(true);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Snapshot of the current thread context, for continuations that resume on another thread
+     */
+    public static Snapshot capture() {
+        return new Snapshot(getThreadLocal(), threadLocalUsers.stream().map(ThreadLocal::get).toList());
+    }
+
+    /**
+     * Snapshot over a copy of the current thread context, so what runs in it does not touch the caller's context
+     */
+    public static Snapshot fork() {
+        return new Snapshot(ContextMap.fork(getThreadLocal()), threadLocalUsers.stream().map(ThreadLocal::get).toList());
+    }
+
+    public static class Snapshot {
+
+        private final Map<String, Object> map;
+
+        private final List<?> values;
+
+        private Snapshot(Map<String, Object> map, List<?> values) {
+            this.map = map;
+            this.values = values;
+        }
+
+        /**
+         * Install the snapshot on the current thread while the supplier runs, then restore what was there before
+         */
+        public <T> T call(Supplier<T> supplier) {
+            Map<String, Object> previousMap = threadLocal.get();
+            List<ThreadLocal<?>> users = threadLocalUsers;
+            int size = Math.min(users.size(), values.size());
+            Object[] previousValues = new Object[size];
+            for (int i = 0; i < size; i++) {
+                @SuppressWarnings("unchecked")
+                ThreadLocal<Object> threadLocalUser = (ThreadLocal<Object>) users.get(i);
+                previousValues[i] = threadLocalUser.get();
+                threadLocalUser.set(values.get(i));
+            }
+            threadLocal.set(map);
+            try {
+                return supplier.get();
+            } finally {
+                threadLocal.set(previousMap);
+                for (int i = 0; i < size; i++) {
+                    @SuppressWarnings("unchecked")
+                    ThreadLocal<Object> threadLocalUser = (ThreadLocal<Object>) users.get(i);
+                    if (previousValues[i] != null) {
+                        threadLocalUser.set(previousValues[i]);
+                    } else {
+                        threadLocalUser.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    private static Object forkUserValue(ThreadLocal<?> threadLocalUser) {
+        Object value = threadLocalUser.get();
+        if (!(value instanceof Map<?, ?> map)) {
+            return value;
+        }
+        if (map instanceof ContextMap contextMap) {
+            return ContextMap.fork(contextMap);
+        }
+        ContextMap contextMap = ContextMap.copyOf(map);
+        @SuppressWarnings("unchecked")
+        ThreadLocal<Object> userThreadLocal = (ThreadLocal<Object>) threadLocalUser;
+        userThreadLocal.set(contextMap);
+        return ContextMap.fork(contextMap);
+    }
+
     public static Runnable getDecoratorAsync(Runnable runnable) {
         log.debug("process getDecoratorAsync runnable...");
-        final Map<String, Object> map = new HashMap<>(getThreadLocal());
-        final List<?> results = threadLocalUsers.stream().map(t -> new HashMap<>((Map<?, ?>) t.get())).toList();
+        final Map<String, Object> map = ContextMap.fork(getThreadLocal());
+        final List<?> results = threadLocalUsers.stream().map(TheadHelper::forkUserValue).toList();
         return () -> {
             threadLocal.set(map);
             for (int i = 0; i < threadLocalUsers.size(); i++) {
@@ -105,8 +213,8 @@ public class TheadHelper {
 
     public static <T> Callable<T> getDecoratorAsync(Callable<T> callable) {
         log.debug("process getDecoratorAsync callable...");
-        final Map<String, Object> map = new HashMap<>(getThreadLocal());
-        final List<?> results = threadLocalUsers.stream().map(t -> new HashMap<>((Map<?, ?>) t.get())).toList();
+        final Map<String, Object> map = ContextMap.fork(getThreadLocal());
+        final List<?> results = threadLocalUsers.stream().map(TheadHelper::forkUserValue).toList();
         return () -> {
             threadLocal.set(map);
             for (int i = 0; i < threadLocalUsers.size(); i++) {
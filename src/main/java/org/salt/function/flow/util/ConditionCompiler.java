@@ -0,0 +1,349 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.salt.function.flow.util;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Compiles the simple subset of include expressions straight into a predicate over the condition map:
+ * variables, number / string / boolean / null literals, {@code == != > >= < <=},
+ * {@code && || !} (also {@code and or}) and parentheses.
+ *
+ * <p>Anything else (method calls, property access, arithmetic, {@code in}, ...) is rejected at compile time,
+ * and operands the subset does not compare (e.g. a String against a Number, or null in an ordering)
+ * raise {@link #UNSUPPORTED} at evaluation time, so the caller can fall back to QLExpress for both.
+ */
+public final class ConditionCompiler {
+
+    /**
+     * Signal that an operand combination is outside the subset; stackless, thrown on the evaluation path
+     */
+    public static final RuntimeException UNSUPPORTED = new RuntimeException("condition outside compiled subset", null, false, false) {
+    };
+
+    private ConditionCompiler() {
+    }
+
+    /**
+     * Compile an include expression, or return null if it is outside the subset
+     */
+    public static Predicate<Map<String, Object>> compile(String condition) {
+        Expr expr = parse(condition);
+        if (expr == null) {
+            return null;
+        }
+        return conditionMap -> {
+            Object value = expr.eval(conditionMap);
+            if (value instanceof Boolean) {
+                return (Boolean) value;
+            }
+            throw UNSUPPORTED;
+        };
+    }
+
+    /**
+     * Return the variable name and literal of an include of the form {@code key == literal}
+     * (either side), or null for any other expression
+     */
+    public static Map.Entry<String, Object> equality(String condition) {
+        if (parse(condition) instanceof Equal equal) {
+            if (equal.left() instanceof Variable variable && equal.right() instanceof Constant constant) {
+                return new AbstractMap.SimpleImmutableEntry<>(variable.name(), constant.value());
+            }
+            if (equal.right() instanceof Variable variable && equal.left() instanceof Constant constant) {
+                return new AbstractMap.SimpleImmutableEntry<>(variable.name(), constant.value());
+            }
+        }
+        return null;
+    }
+
+    private static Expr parse(String condition) {
+        if (condition == null) {
+            return null;
+        }
+        List<String> tokens = tokenize(condition);
+        if (tokens == null || tokens.isEmpty()) {
+            return null;
+        }
+        Parser parser = new Parser(tokens);
+        Expr expr = parser.or();
+        return expr != null && parser.pos == tokens.size() ? expr : null;
+    }
+
+    private static List<String> tokenize(String s) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < s.length()) {
+            char c = s.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '\'' || c == '"') {
+                int end = s.indexOf(c, i + 1);
+                if (end < 0 || s.substring(i + 1, end).indexOf('\\') >= 0) {
+                    return null;
+                }
+                tokens.add(s.substring(i, end + 1));
+                i = end + 1;
+            } else if (Character.isDigit(c)) {
+                int start = i;
+                while (i < s.length() && (Character.isDigit(s.charAt(i)) || s.charAt(i) == '.')) {
+                    i++;
+                }
+                if (i < s.length() && Character.isJavaIdentifierPart(s.charAt(i))) {
+                    return null;
+                }
+                tokens.add(s.substring(start, i));
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int start = i;
+                while (i < s.length() && Character.isJavaIdentifierPart(s.charAt(i))) {
+                    i++;
+                }
+                tokens.add(s.substring(start, i));
+            } else if (s.startsWith("==", i) || s.startsWith("!=", i) || s.startsWith(">=", i) || s.startsWith("<=", i)
+                    || s.startsWith("&&", i) || s.startsWith("||", i)) {
+                tokens.add(s.substring(i, i + 2));
+                i += 2;
+            } else if (c == '>' || c == '<' || c == '!' || c == '(' || c == ')' || c == '-') {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else {
+                return null;
+            }
+        }
+        return tokens;
+    }
+
+    private static class Parser {
+
+        private final List<String> tokens;
+
+        private int pos;
+
+        Parser(List<String> tokens) {
+            this.tokens = tokens;
+        }
+
+        private String peek() {
+            return pos < tokens.size() ? tokens.get(pos) : null;
+        }
+
+        private boolean accept(String... expected) {
+            String token = peek();
+            for (String e : expected) {
+                if (e.equals(token)) {
+                    pos++;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        Expr or() {
+            Expr left = and();
+            while (left != null && accept("||", "or")) {
+                Expr l = left, r = and();
+                if (r == null) {
+                    return null;
+                }
+                left = map -> bool(l.eval(map)) || bool(r.eval(map));
+            }
+            return left;
+        }
+
+        Expr and() {
+            Expr left = comparison();
+            while (left != null && accept("&&", "and")) {
+                Expr l = left, r = comparison();
+                if (r == null) {
+                    return null;
+                }
+                left = map -> bool(l.eval(map)) && bool(r.eval(map));
+            }
+            return left;
+        }
+
+        Expr comparison() {
+            Expr left = unary();
+            String op = peek();
+            if (left == null || !("==".equals(op) || "!=".equals(op) || ">".equals(op) || ">=".equals(op) || "<".equals(op) || "<=".equals(op))) {
+                return left;
+            }
+            pos++;
+            Expr right = unary();
+            if (right == null) {
+                return null;
+            }
+            switch (op) {
+                case "==": return new Equal(left, right);
+                case "!=": return map -> !equal(left.eval(map), right.eval(map));
+                case ">": return map -> compare(left.eval(map), right.eval(map)) > 0;
+                case ">=": return map -> compare(left.eval(map), right.eval(map)) >= 0;
+                case "<": return map -> compare(left.eval(map), right.eval(map)) < 0;
+                default: return map -> compare(left.eval(map), right.eval(map)) <= 0;
+            }
+        }
+
+        Expr unary() {
+            if (accept("!")) {
+                Expr operand = unary();
+                return operand != null ? map -> !bool(operand.eval(map)) : null;
+            }
+            return primary();
+        }
+
+        Expr primary() {
+            String token = peek();
+            if (token == null) {
+                return null;
+            }
+            if (accept("(")) {
+                Expr inner = or();
+                return inner != null && accept(")") ? inner : null;
+            }
+            if (accept("-")) {
+                String number = peek();
+                if (number == null || !Character.isDigit(number.charAt(0))) {
+                    return null;
+                }
+                pos++;
+                Object value = number("-" + number);
+                return value != null ? constant(value) : null;
+            }
+            pos++;
+            char c = token.charAt(0);
+            if (c == '\'' || c == '"') {
+                return constant(token.substring(1, token.length() - 1));
+            }
+            if (Character.isDigit(c)) {
+                Object value = number(token);
+                return value != null ? constant(value) : null;
+            }
+            if (!Character.isJavaIdentifierStart(c) || "and".equals(token) || "or".equals(token)) {
+                return null;
+            }
+            switch (token) {
+                case "true": return constant(Boolean.TRUE);
+                case "false": return constant(Boolean.FALSE);
+                case "null": return constant(null);
+                default:
+                    String next = peek();
+                    if (next != null && (next.equals("(") || Character.isJavaIdentifierStart(next.charAt(0))
+                            && !next.equals("and") && !next.equals("or"))) {
+                        return null;
+                    }
+                    return new Variable(token);
+            }
+        }
+    }
+
+    private static Expr constant(Object value) {
+        return new Constant(value);
+    }
+
+    private static Object number(String token) {
+        try {
+            if (token.indexOf('.') >= 0) {
+                return Double.valueOf(token);
+            }
+            long value = Long.parseLong(token);
+            return value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE ? (Object) (int) value : (Object) value;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static boolean bool(Object value) {
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        throw UNSUPPORTED;
+    }
+
+    private static boolean equal(Object left, Object right) {
+        if (left == null || right == null) {
+            return left == right;
+        }
+        if (left instanceof Number && right instanceof Number) {
+            return compareNumber((Number) left, (Number) right) == 0;
+        }
+        if (left.getClass() == right.getClass()) {
+            return left.equals(right);
+        }
+        throw UNSUPPORTED;
+    }
+
+    private static int compare(Object left, Object right) {
+        if (left instanceof Number && right instanceof Number) {
+            return compareNumber((Number) left, (Number) right);
+        }
+        if (left instanceof String && right instanceof String) {
+            return ((String) left).compareTo((String) right);
+        }
+        throw UNSUPPORTED;
+    }
+
+    static int compareNumber(Number left, Number right) {
+        if (isIntegral(left) && isIntegral(right)) {
+            return Long.compare(left.longValue(), right.longValue());
+        }
+        if (left instanceof BigDecimal || right instanceof BigDecimal || left instanceof BigInteger || right instanceof BigInteger) {
+            if (!isFinite(left) || !isFinite(right)) {
+                // NaN and infinities have no BigDecimal value, leave them to QLExpress
+                throw UNSUPPORTED;
+            }
+            return new BigDecimal(left.toString()).compareTo(new BigDecimal(right.toString()));
+        }
+        return Double.compare(left.doubleValue(), right.doubleValue());
+    }
+
+    private static boolean isFinite(Number number) {
+        return !(number instanceof Double || number instanceof Float) || Double.isFinite(number.doubleValue());
+    }
+
+    private static boolean isIntegral(Number number) {
+        return number instanceof Integer || number instanceof Long || number instanceof Short || number instanceof Byte;
+    }
+
+    private interface Expr {
+        Object eval(Map<String, Object> conditionMap);
+    }
+
+    private record Constant(Object value) implements Expr {
+        @Override
+        public Object eval(Map<String, Object> conditionMap) {
+            return value;
+        }
+    }
+
+    private record Equal(Expr left, Expr right) implements Expr {
+        @Override
+        public Object eval(Map<String, Object> conditionMap) {
+            return equal(left.eval(conditionMap), right.eval(conditionMap));
+        }
+    }
+
+    private record Variable(String name) implements Expr {
+        @Override
+        public Object eval(Map<String, Object> conditionMap) {
+            return conditionMap.get(name);
+        }
+    }
+}
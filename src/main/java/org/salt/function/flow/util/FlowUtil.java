@@ -15,8 +15,10 @@
 package org.salt.function.flow.util;
 
 import com.google.gson.Gson;
-import com.ql.util.express.DefaultContext;
+import com.google.gson.GsonBuilder;
 import com.ql.util.express.ExpressRunner;
+import com.ql.util.express.IExpressContext;
+import com.ql.util.express.InstructionSet;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.beanutils.BeanMap;
 import org.apache.commons.lang.StringUtils;
@@ -28,7 +30,8 @@ import org.springframework.aop.framework.AopProxy;
 import java.lang.reflect.Field;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.UUID;
+import java.util.function.Predicate;
+import java.util.concurrent.ThreadLocalRandom;
 
 @Slf4j
 public class FlowUtil {
@@ -36,16 +39,84 @@ public class FlowUtil {
     static ExpressRunner runner = new ExpressRunner();
 
     public static boolean el(String condition, Map<String, Object> conditionMap) {
-        DefaultContext<String, Object> defaultContext = new DefaultContext<>();
-        defaultContext.putAll(conditionMap);
         try {
-            return (boolean) runner.execute(condition, defaultContext, null, true, false);
+            return (boolean) runner.execute(condition, new ConditionContext(conditionMap), null, true, false);
         } catch (Exception e) {
             log.warn("el exception. include:{}, conditionMap:{}, exception:", condition, FlowUtil.toJson(conditionMap), e);
         }
         return false;
     }
 
+    /**
+     * Parse an include expression once, parse errors are thrown here instead of logged on every evaluation.
+     * Expressions in the {@link ConditionCompiler} subset are evaluated natively and only fall back to
+     * QLExpress for operands the subset does not handle.
+     */
+    public static Predicate<Map<String, Object>> compile(String condition) {
+        InstructionSet instructionSet;
+        try {
+            instructionSet = runner.parseInstructionSet(condition);
+        } catch (Exception e) {
+            throw new RuntimeException("include parse error. include:" + condition, e);
+        }
+        Predicate<Map<String, Object>> compiled = ConditionCompiler.compile(condition);
+        if (compiled == null) {
+            return conditionMap -> el(condition, instructionSet, conditionMap);
+        }
+        return conditionMap -> {
+            try {
+                return compiled.test(conditionMap);
+            } catch (RuntimeException e) {
+                if (e != ConditionCompiler.UNSUPPORTED) {
+                    throw e;
+                }
+                return el(condition, instructionSet, conditionMap);
+            }
+        };
+    }
+
+    public static boolean el(String condition, InstructionSet instructionSet, Map<String, Object> conditionMap) {
+        try {
+            return (boolean) runner.execute(instructionSet, new ConditionContext(conditionMap), null, false, false);
+        } catch (Exception e) {
+            log.warn("el exception. include:{}, conditionMap:{}, exception:", condition, FlowUtil.toJson(conditionMap), e);
+        }
+        return false;
+    }
+
+    /**
+     * Read-only view over the condition map, variables assigned by an expression stay local to the evaluation
+     */
+    private static class ConditionContext implements IExpressContext<String, Object> {
+
+        private final Map<String, Object> conditionMap;
+
+        private Map<String, Object> localMap;
+
+        ConditionContext(Map<String, Object> conditionMap) {
+            this.conditionMap = conditionMap;
+        }
+
+        @Override
+        public Object get(Object key) {
+            if (key == null) {
+                return null;
+            }
+            if (localMap != null && localMap.containsKey(key)) {
+                return localMap.get(key);
+            }
+            return conditionMap.get(key);
+        }
+
+        @Override
+        public Object put(String key, Object value) {
+            if (localMap == null) {
+                localMap = new HashMap<>();
+            }
+            return localMap.put(key, value);
+        }
+    }
+
     public static String getNodeInfoKey(String nodeId) {
         return String.format("node_info_%s", nodeId);
     }
@@ -54,12 +125,19 @@ public class FlowUtil {
         return ((StringUtils.isEmpty(info.getInclude())
                     && info.getMatch() == null)
                 || (StringUtils.isNotEmpty(info.getInclude())
-                    && FlowUtil.el(info.getInclude(), ((ContextBus) ContextBus.get()).getConditionMap()))
+                    && isInclude(info, ((ContextBus) ContextBus.get()).getConditionMap()))
                 || (info.getMatch() != null
                     && info.getMatch().apply(input)));
     }
 
-    private static final Gson gson = new Gson();
+    private static boolean isInclude(Info info, Map<String, Object> conditionMap) {
+        if (info.getCondition() != null) {
+            return info.getCondition().test(conditionMap);
+        }
+        return FlowUtil.el(info.getInclude(), conditionMap);
+    }
+
+    private static final Gson gson = new GsonBuilder().serializeSpecialFloatingPointValues().create();
     public static String toJson(Object o) {
         return gson.toJson(o);
     }
@@ -75,8 +153,24 @@ public class FlowUtil {
         return map;
     }
 
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * Random version 4 UUID rendered as 32 hex chars without dashes; uses ThreadLocalRandom
+     * and formats directly, so it needs neither the shared SecureRandom nor a regex replace.
+     */
     public static String id() {
-        return UUID.randomUUID().toString().replaceAll("-", "");
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long mostSigBits = (random.nextLong() & 0xffffffffffff0fffL) | 0x0000000000004000L;
+        long leastSigBits = (random.nextLong() & 0x3fffffffffffffffL) | 0x8000000000000000L;
+        char[] chars = new char[32];
+        for (int i = 15; i >= 0; i--) {
+            chars[i] = HEX_DIGITS[(int) (mostSigBits & 0xf)];
+            chars[i + 16] = HEX_DIGITS[(int) (leastSigBits & 0xf)];
+            mostSigBits >>>= 4;
+            leastSigBits >>>= 4;
+        }
+        return new String(chars);
     }
 
     public static Object getTarget(Object proxy) throws Exception {
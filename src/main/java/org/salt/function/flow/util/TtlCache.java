@@ -0,0 +1,172 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.salt.function.flow.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Size-bounded cache whose entries expire a fixed time after they are written.
+ * Keys are spread over lock stripes, each stripe evicts its least recently used entry once full,
+ * so the cache holds at most {@code maxSize} entries rounded up to a multiple of the stripe count.
+ */
+public final class TtlCache<K, V> {
+
+    private static final int MAX_STRIPES = 16;
+
+    private final long ttlNanos;
+
+    private final List<Stripe<K, V>> stripes;
+
+    private final LongSupplier nanoClock;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param ttlMillis time an entry stays readable after it is written, 0 or less for no expiry
+     * @param maxSize most entries kept
+     */
+    public TtlCache(long ttlMillis, int maxSize) {
+        this(ttlMillis, maxSize, System::nanoTime);
+    }
+
+    TtlCache(long ttlMillis, int maxSize, LongSupplier nanoClock) {
+        if (maxSize <= 0) {
+            throw new RuntimeException("maxSize must be positive. maxSize:" + maxSize);
+        }
+        int size = Math.min(MAX_STRIPES, Integer.highestOneBit(maxSize));
+        this.stripes = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            stripes.add(new Stripe<>((maxSize + size - 1) / size));
+        }
+        this.ttlNanos = ttlMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(ttlMillis) : Long.MAX_VALUE;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * The value cached for the key, null when absent or expired
+     */
+    public V get(K key) {
+        Stripe<K, V> stripe = stripe(key);
+        synchronized (stripe) {
+            Entry<V> entry = stripe.get(key);
+            if (entry != null && nanoClock.getAsLong() - entry.written < ttlNanos) {
+                hits.increment();
+                return entry.value;
+            }
+            if (entry != null) {
+                stripe.remove(key);
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    public void put(K key, V value) {
+        Stripe<K, V> stripe = stripe(key);
+        synchronized (stripe) {
+            stripe.put(key, new Entry<>(value, nanoClock.getAsLong()));
+        }
+    }
+
+    public void remove(K key) {
+        Stripe<K, V> stripe = stripe(key);
+        synchronized (stripe) {
+            stripe.remove(key);
+        }
+    }
+
+    public void clear() {
+        for (Stripe<K, V> stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    /**
+     * Entries held, expired entries are counted until they are read or evicted
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe<K, V> stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    private Stripe<K, V> stripe(K key) {
+        int hash = key.hashCode();
+        return stripes.get((hash ^ (hash >>> 16)) & (stripes.size() - 1));
+    }
+
+    private record Entry<V>(V value, long written) {
+    }
+
+    /**
+     * Access ordered map of one stripe, guarded by the stripe monitor
+     */
+    private static final class Stripe<K, V> {
+
+        private final int capacity;
+
+        private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+        Stripe(int capacity) {
+            this.capacity = capacity;
+        }
+
+        Entry<V> get(K key) {
+            return entries.get(key);
+        }
+
+        void put(K key, Entry<V> entry) {
+            entries.put(key, entry);
+            if (entries.size() > capacity) {
+                Map.Entry<K, Entry<V>> eldest = entries.entrySet().iterator().next();
+                entries.remove(eldest.getKey());
+            }
+        }
+
+        void remove(K key) {
+            entries.remove(key);
+        }
+
+        void clear() {
+            entries.clear();
+        }
+
+        int size() {
+            return entries.size();
+        }
+    }
+}
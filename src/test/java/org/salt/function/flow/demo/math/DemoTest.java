@@ -20,16 +20,27 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.salt.function.flow.FlowEngine;
 import org.salt.function.flow.FlowInstance;
+import org.salt.function.flow.Info;
 import org.salt.function.flow.TestApplication;
 import org.salt.function.flow.context.ContextBus;
 import org.salt.function.flow.demo.math.node.*;
+import org.salt.function.flow.node.BatchFlowNode;
 import org.salt.function.flow.node.FlowNode;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.SpringBootConfiguration;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest(classes = TestApplication.class)
@@ -251,4 +262,188 @@ public class DemoTest {
             Assert.assertTrue(result != null && ((a < 10 && result == 12) || (a >= 10 && result == 985)));
         }
     }
+
+    /**
+     * Async exe gives the same result as sync exe and leaves the caller's context alone
+     */
+    @Test
+    public void testExecuteAsyncDemo() throws Exception {
+        String[] flowIds = {"demo_flow", "demo_flow_extend", "demo_flow_exclusive", "demo_flow_concurrent",
+                "demo_flow_inclusive_concurrent", "demo_flow_loop", "demo_branch_concurrent", "demo_branch_nested"};
+        for (String flowId : flowIds) {
+            Integer expected = flowEngine.execute(flowId, 39);
+            ContextBus.clean();
+            Integer result = flowEngine.<Integer, Integer>executeAsync(flowId, 39).get(5, TimeUnit.SECONDS);
+            System.out.println(flowId + " async result: " + result);
+            Assert.assertEquals(flowId, expected, result);
+            Assert.assertNull(ContextBus.get());
+        }
+
+        Assert.assertTrue(flowEngine.executeAsync("demo_flow_missing", 39).isCompletedExceptionally());
+
+        Thread caller = Thread.currentThread();
+        FlowInstance flow = flowEngine.builder()
+                .next(input -> Thread.currentThread() != caller ? input : null)
+                .build();
+        Assert.assertEquals(Integer.valueOf(39), flowEngine.<Integer, Integer>executeAsync(flow, 39).get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Batch exe gives the same results as one exe per param, calling a batch node once for all params
+     */
+    @Test
+    public void testExecuteBatchDemo() {
+        AtomicInteger batchCalls = new AtomicInteger();
+        BatchFlowNode<Integer, Integer> doubleNode = new BatchFlowNode<>() {
+            @Override
+            public List<Integer> processBatch(List<Integer> inputs) {
+                batchCalls.incrementAndGet();
+                return inputs.stream().map(num -> num * 2).collect(Collectors.toList());
+            }
+        };
+        FlowInstance flow = flowEngine.builder().id("demo_batch_flow")
+                .next(AddNode.class)
+                .next(doubleNode)
+                .next(ReduceNode.class)
+                .build();
+        List<Integer> params = List.of(39, 40, 41, 42);
+
+        List<Integer> expected = new ArrayList<>();
+        for (Integer param : params) {
+            expected.add(flowEngine.execute(flow, param));
+        }
+        Assert.assertEquals(params.size(), batchCalls.getAndSet(0));
+
+        List<Integer> results = flowEngine.executeBatch(flow, params);
+        System.out.println("demo_batch_flow batch results: " + results);
+        Assert.assertEquals(expected, results);
+        Assert.assertEquals(1, batchCalls.get());
+
+        List<Integer> exclusive = flowEngine.executeBatch("demo_flow_exclusive", params);
+        for (int i = 0; i < params.size(); i++) {
+            Assert.assertEquals(flowEngine.execute("demo_flow_exclusive", params.get(i)), exclusive.get(i));
+        }
+    }
+
+    /**
+     * Cached node results are served without calling the node while fresh
+     */
+    @Test
+    public void testNodeCacheDemo() {
+        AtomicInteger calls = new AtomicInteger();
+        Info taxRate = Info.builder().idAlias("tax_rate").funNode(input -> {
+            calls.incrementAndGet();
+            return (Integer) input % 10;
+        }).build().cCache(input -> (Integer) input % 100, 60000, 16);
+        FlowInstance flow = flowEngine.builder().id("demo_cache_flow")
+                .next(taxRate)
+                .build();
+
+        Assert.assertEquals(Integer.valueOf(9), flowEngine.execute(flow, 39));
+        Assert.assertEquals(Integer.valueOf(9), flowEngine.execute(flow, 39));
+        Assert.assertEquals(Integer.valueOf(9), flowEngine.execute(flow, 139));
+        Assert.assertEquals(Integer.valueOf(0), flowEngine.execute(flow, 40));
+        Assert.assertEquals(2, calls.get());
+        Assert.assertEquals(2, taxRate.getCache().hitCount());
+        Assert.assertEquals(2, taxRate.getCache().missCount());
+    }
+
+    /**
+     * A cache hit does not call the node, so rolling the flow back does not roll the node back either
+     */
+    @Test
+    public void testNodeCacheRollback() {
+        AtomicInteger calls = new AtomicInteger();
+        AtomicInteger rollbacks = new AtomicInteger();
+        Info quote = Info.builder().idAlias("quote").flowNode(new FlowNode<Integer, Integer>() {
+            @Override
+            public Integer process(Integer input) {
+                calls.incrementAndGet();
+                return input * 2;
+            }
+
+            @Override
+            public void rollback() {
+                rollbacks.incrementAndGet();
+            }
+        }).build().cCache(input -> input, 60000, 16);
+        FlowInstance flow = flowEngine.builder().id("demo_cache_rollback_flow")
+                .next(quote)
+                .next(input -> {
+                    ContextBus.get().rollbackProcess();
+                    return input;
+                })
+                .build();
+
+        flowEngine.execute(flow, 39);
+        flowEngine.execute(flow, 39);
+        Assert.assertEquals(1, calls.get());
+        Assert.assertEquals(1, rollbacks.get());
+    }
+
+    /**
+     * Concurrent misses of a cache key call the node once
+     */
+    @Test
+    public void testNodeCacheConcurrentMiss() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        Info slowRate = Info.builder().idAlias("slow_rate").funNode(input -> {
+            calls.incrementAndGet();
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return (Integer) input % 10;
+        }).build().cCache(input -> input, 60000, 16);
+        FlowInstance flow = flowEngine.builder().id("demo_cache_miss_flow")
+                .next(slowRate)
+                .build();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Object>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(executor.submit(() -> flowEngine.execute(flow, 39)));
+            }
+            for (Future<Object> future : futures) {
+                Assert.assertEquals(9, future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(1, calls.get());
+    }
+
+    /**
+     * Cached flow results are returned without running the flow, per param key and transmit entry
+     */
+    @Test
+    public void testFlowCacheDemo() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        FlowInstance flow = flowEngine.builder().id("demo_flow_cache")
+                .next(AddNode.class)
+                .next(input -> {
+                    calls.incrementAndGet();
+                    return (Integer) input * (Integer) ContextBus.get().getTransmit("rate");
+                })
+                .cache(param -> param, 60000, 16, "rate")
+                .build();
+
+        Assert.assertEquals(Integer.valueOf(162), flowEngine.execute(flow, 39, Map.of("rate", 1)));
+        Assert.assertEquals(Integer.valueOf(162), flowEngine.execute(flow, 39, Map.of("rate", 1)));
+        Assert.assertEquals(Integer.valueOf(324), flowEngine.execute(flow, 39, Map.of("rate", 2)));
+        Assert.assertEquals(1, flow.getResultCache().hitCount());
+        Assert.assertEquals(2, calls.get());
+
+        List<Object> hooks = new ArrayList<>();
+        Integer hit = flowEngine.execute(flow, 39, Map.of("rate", 1), null, hooks::add, hooks::add);
+        Assert.assertEquals(Integer.valueOf(162), hit);
+        Assert.assertEquals(List.of(39, 162), hooks);
+        Assert.assertEquals(2, calls.get());
+
+        Integer result = flowEngine.<Integer, Integer>executeAsync(flow, 39, Map.of("rate", 2)).get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(Integer.valueOf(324), result);
+        Assert.assertEquals(2, calls.get());
+    }
 }
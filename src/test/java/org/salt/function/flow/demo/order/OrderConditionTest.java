@@ -166,4 +166,19 @@ public class OrderConditionTest {
         System.out.println("conditionByReturnValue VIP finalPrice=" + result.getFinalPrice());
         Assert.assertEquals(450, result.getFinalPrice());
     }
+
+    /**
+     * Include expressions are parsed when the flow is built,
+     * so a malformed expression fails at build time instead of silently routing nowhere.
+     */
+    @Test
+    public void testConditionParseErrorAtBuild() {
+        Assert.assertThrows(RuntimeException.class, () -> flowEngine.builder()
+                .next(ItemPriceNode.class)
+                .next(
+                        Info.c("vip == ", MemberDiscountNode.class),
+                        Info.c("vip == false", CouponDiscountNode.class)
+                )
+                .build());
+    }
 }
@@ -0,0 +1,100 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.salt.function.flow.node.structure;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.salt.function.flow.Info;
+import org.salt.function.flow.context.ContextBus;
+import org.salt.function.flow.util.FlowUtil;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+public class BranchIndexTest {
+
+    private static final List<Info> CHANNELS = List.of(
+            info("channel == 'app'", "app"),
+            info("channel == 'web'", "web"),
+            info("amount > 100", "big"),
+            info("'mini' == channel", "mini"),
+            info("channel == 'h5'", "h5"),
+            info("channel == 'app'", "app2"),
+            info(null, "always"));
+
+    @Test
+    public void testSelectSameAsLinear() {
+        BranchIndex index = BranchIndex.of(CHANNELS);
+        Assert.assertNotNull(index);
+        for (Object channel : new Object[]{"app", "web", "mini", "h5", "pc", null}) {
+            for (Object amount : new Object[]{50, 200}) {
+                Map<String, Object> map = new HashMap<>();
+                map.put("channel", channel);
+                map.put("amount", amount);
+                Map<String, Object> conditionMap = ContextBus.create(map).getConditionMap();
+                Assert.assertEquals(channel + " " + amount, linear(CHANNELS, conditionMap), ids(index.select(null, conditionMap)));
+            }
+        }
+    }
+
+    @Test
+    public void testNumericKeys() {
+        List<Info> infoList = List.of(info("level == 1", "1"), info("level == 2", "2"), info("level == 2.5", "2.5"), info("level == 3", "3"));
+        BranchIndex index = BranchIndex.of(infoList);
+        Assert.assertNotNull(index);
+        for (Object level : new Object[]{1, 2L, 2.0d, new BigDecimal("2.50"), 3.0f, 4}) {
+            Map<String, Object> map = ContextBus.create(Map.of("level", level)).getConditionMap();
+            Assert.assertEquals(String.valueOf(level), linear(infoList, map), ids(index.select(null, map)));
+        }
+    }
+
+    @Test
+    public void testFallbackOnOtherKind() {
+        BranchIndex index = BranchIndex.of(CHANNELS);
+        Assert.assertNull(index.select(null, Map.of("channel", 1)));
+    }
+
+    @After
+    public void clean() {
+        ContextBus.clean();
+    }
+
+    @Test
+    public void testNotIndexed() {
+        Assert.assertNull(BranchIndex.of(List.of(info("channel == 'app'", "app"), info("channel == 'web'", "web"))));
+        Assert.assertNull(BranchIndex.of(List.of(info("a == 'x'", "a"), info("b == 'x'", "b"), info("c == 'x'", "c"), info("d == 'x'", "d"))));
+        Assert.assertNull(BranchIndex.of(List.of(info("a == 'x'", "1"), info("a == 2", "2"), info("a == true", "3"), info("a == 'y'", "4"))));
+    }
+
+    private static Info info(String include, String id) {
+        Info info = Info.c(include, id);
+        if (include != null) {
+            info.setCondition(FlowUtil.compile(include));
+        }
+        return info;
+    }
+
+    private static List<String> linear(List<Info> infoList, Map<String, Object> map) {
+        return infoList.stream().filter(info -> info.getInclude() == null || FlowUtil.el(info.getInclude(), map)).map(Info::getId).collect(Collectors.toList());
+    }
+
+    private static List<String> ids(List<Info> infoList) {
+        return infoList.stream().map(Info::getId).collect(Collectors.toList());
+    }
+}
@@ -18,13 +18,42 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.salt.function.flow.FlowEngine;
+import org.salt.function.flow.FlowInstance;
+import org.salt.function.flow.FlowPipeline;
+import org.salt.function.flow.GatewayOption;
+import org.salt.function.flow.Info;
 import org.salt.function.flow.TestApplication;
+import org.salt.function.flow.context.ContextBus;
+import org.salt.function.flow.node.FlowNode;
+import org.salt.function.flow.test.thread.node.BitCountNode;
+import org.salt.function.flow.test.thread.node.BitDelayNode;
 import org.salt.function.flow.thread.TheadHelper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.SpringBootConfiguration;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
 @RunWith(SpringRunner.class)
 @SpringBootTest(classes = TestApplication.class)
 @SpringBootConfiguration
@@ -103,4 +132,544 @@ public class ThreadTest {
         System.out.println("demo_branch_flow_concurrent_threadlocal result: " + result);
         Assert.assertTrue(result != null && result == 3948);
     }
+
+    @Test
+    public void testConcurrentCancelOnTimeout() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        CountDownLatch slowReturned = new CountDownLatch(1);
+        FlowInstance flow = flowEngine.builder()
+                .concurrent(GatewayOption.CANCEL_ON_TIMEOUT, 50,
+                        Info.builder().idAlias("fast").funNode(input -> 1).build(),
+                        Info.builder().idAlias("slow").funNode(input -> {
+                            try {
+                                Thread.sleep(2000);
+                            } catch (InterruptedException e) {
+                                interrupted.countDown();
+                            }
+                            slowReturned.countDown();
+                            return 2;
+                        }).build())
+                .next(input -> {
+                    try {
+                        slowReturned.await(1, TimeUnit.SECONDS);
+                        Thread.sleep(100);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    Map<String, Object> result = new HashMap<>((Map<String, Object>) input);
+                    result.put("lateResult", ContextBus.get().getResult("slow"));
+                    return result;
+                })
+                .build();
+        Map<String, Object> result = flowEngine.execute(flow, 39);
+        Assert.assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+        Assert.assertEquals(1, result.get("fast"));
+        Assert.assertTrue(result.get("slow") instanceof TimeoutException);
+        Assert.assertNull(result.get("lateResult"));
+    }
+
+    @Test
+    public void testRace() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(2);
+        FlowInstance flow = flowEngine.builder()
+                .race(
+                        Info.builder().idAlias("empty").funNode(input -> null).build(),
+                        Info.builder().idAlias("slow").funNode(input -> sleep(2000, interrupted, 2)).build(),
+                        Info.builder().idAlias("fast").funNode(input -> sleep(20, interrupted, 1)).build())
+                .next(input -> (Integer) input * 10)
+                .build();
+        long start = System.currentTimeMillis();
+        Integer result = flowEngine.execute(flow, 39);
+        Assert.assertEquals(Integer.valueOf(10), result);
+        Assert.assertTrue(System.currentTimeMillis() - start < 1000);
+
+        result = flowEngine.<Integer, Integer>executeAsync(flow, 39).get(1, TimeUnit.SECONDS);
+        Assert.assertEquals(Integer.valueOf(10), result);
+        Assert.assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testHedge() {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch interrupted = new CountDownLatch(1);
+        FlowInstance flow = flowEngine.builder()
+                .hedge(
+                        Info.builder().idAlias("primary").funNode(input -> calls.incrementAndGet() <= 20 ? sleep(5, interrupted, 1) : sleep(2000, interrupted, 1)).build(),
+                        Info.builder().idAlias("backup").funNode(input -> 2).build())
+                .build();
+        for (int i = 0; i < 20; i++) {
+            Assert.assertEquals(Integer.valueOf(1), flowEngine.execute(flow, 39));
+        }
+        long start = System.currentTimeMillis();
+        Integer result = flowEngine.execute(flow, 39);
+        Assert.assertEquals(Integer.valueOf(2), result);
+        Assert.assertTrue(System.currentTimeMillis() - start < 1000);
+
+        // latencies are kept per primary node: a gateway warmed up through another flow hedges on its first run
+        AtomicInteger lookups = new AtomicInteger();
+        FlowNode<Integer, Integer> lookup = new FlowNode<>() {
+            @Override
+            public Integer process(Integer input) {
+                return lookups.incrementAndGet() <= 20 ? sleep(5, interrupted, 1) : sleep(2000, interrupted, 1);
+            }
+        };
+        FlowInstance warmFlow = flowEngine.builder()
+                .hedge(Info.builder().flowNode(lookup).build(), Info.builder().funNode(input -> 2).build())
+                .build();
+        FlowInstance coldFlow = flowEngine.builder()
+                .hedge(Info.builder().flowNode(lookup).build(), Info.builder().funNode(input -> 3).build())
+                .build();
+        for (int i = 0; i < 20; i++) {
+            Assert.assertEquals(Integer.valueOf(1), flowEngine.execute(warmFlow, 39));
+        }
+        start = System.currentTimeMillis();
+        Assert.assertEquals(Integer.valueOf(3), flowEngine.execute(coldFlow, 39));
+        Assert.assertTrue(System.currentTimeMillis() - start < 1000);
+    }
+
+    @Test
+    public void testQuorum() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(2);
+        FlowInstance flow = flowEngine.builder()
+                .quorum(2, GatewayOption.CANCEL_REMAINING,
+                        Info.builder().idAlias("w1").funNode(input -> sleep(10, interrupted, 1)).build(),
+                        Info.builder().idAlias("w2").funNode(input -> sleep(2000, interrupted, 2)).build(),
+                        Info.builder().idAlias("w3").funNode(input -> sleep(20, interrupted, 3)).build(),
+                        Info.builder().idAlias("w4").funNode(input -> sleep(2000, interrupted, 4)).build())
+                .build();
+        long start = System.currentTimeMillis();
+        Map<String, Object> result = flowEngine.execute(flow, 39);
+        Assert.assertTrue(System.currentTimeMillis() - start < 1000);
+        Assert.assertEquals(Map.of("w1", 1, "w3", 3), result);
+        Assert.assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+
+        result = flowEngine.<Integer, Map<String, Object>>executeAsync(flow, 39).get(1, TimeUnit.SECONDS);
+        Assert.assertEquals(Map.of("w1", 1, "w3", 3), result);
+
+        // a branch returning null does not count toward the quorum
+        FlowInstance nullFlow = flowEngine.builder()
+                .quorum(2,
+                        Info.builder().idAlias("r1").funNode(input -> null).build(),
+                        Info.builder().idAlias("r2").funNode(input -> sleep(50, new CountDownLatch(1), 2)).build(),
+                        Info.builder().idAlias("r3").funNode(input -> sleep(150, new CountDownLatch(1), 3)).build())
+                .build();
+        Assert.assertEquals(Map.of("r2", 2, "r3", 3), flowEngine.execute(nullFlow, 39));
+        Assert.assertEquals(Map.of("r2", 2, "r3", 3), flowEngine.<Integer, Map<String, Object>>executeAsync(nullFlow, 39).get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testConcurrentFailFast() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        FlowInstance flow = flowEngine.builder()
+                .concurrent(GatewayOption.FAIL_FAST,
+                        Info.builder().idAlias("slow").funNode(input -> sleep(2000, interrupted, 1)).build(),
+                        Info.builder().idAlias("invalid").funNode(input -> {
+                            throw new RuntimeException("invalid");
+                        }).build())
+                .build();
+        long start = System.currentTimeMillis();
+        Map<String, Object> result = flowEngine.execute(flow, 39);
+        Assert.assertTrue(System.currentTimeMillis() - start < 1000);
+        Assert.assertTrue(result.get("invalid") instanceof RuntimeException);
+        Assert.assertFalse(result.containsKey("slow"));
+        Assert.assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+
+        FlowInstance stopFlow = flowEngine.builder()
+                .concurrent(GatewayOption.FAIL_FAST,
+                        Info.builder().idAlias("slow").funNode(input -> sleep(2000, interrupted, 1)).build(),
+                        Info.builder().idAlias("stop").funNode(input -> {
+                            ContextBus.get().stopProcess();
+                            return 2;
+                        }).build())
+                .next(input -> 3)
+                .build();
+        start = System.currentTimeMillis();
+        Assert.assertNull(flowEngine.<Integer, Integer>executeAsync(stopFlow, 39).get(1, TimeUnit.SECONDS));
+        Assert.assertTrue(System.currentTimeMillis() - start < 1000);
+    }
+
+    @Test
+    public void testNodeBatchWindow() throws Exception {
+        FlowInstance flow = flowEngine.builder().next("bit_count").build();
+        BitCountNode.BATCH_SIZES.clear();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int param : new int[] {1, 3, 7, 15}) {
+                futures.add(executor.submit(() -> flowEngine.<Integer, Integer>execute(flow, param)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                Assert.assertEquals(Integer.valueOf(i + 1), futures.get(i).get(1, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(List.of(4), BitCountNode.BATCH_SIZES);
+
+        Assert.assertEquals(Integer.valueOf(8), flowEngine.execute(flow, 255));
+        Assert.assertEquals(List.of(4, 1), BitCountNode.BATCH_SIZES);
+    }
+
+    @Test
+    public void testSingleFlight() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        FlowInstance flow = flowEngine.builder()
+                .next(Info.builder().idAlias("sku").singleFlight(input -> input).funNode(input -> {
+                    calls.incrementAndGet();
+                    started.countDown();
+                    sleep(200, new CountDownLatch(1), 0);
+                    return (Integer) input * 2;
+                }).build())
+                .build();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            futures.add(executor.submit(() -> flowEngine.<Integer, Integer>execute(flow, 39)));
+            Assert.assertTrue(started.await(1, TimeUnit.SECONDS));
+            for (int i = 0; i < 3; i++) {
+                futures.add(executor.submit(() -> flowEngine.<Integer, Integer>execute(flow, 39)));
+            }
+            for (Future<Integer> future : futures) {
+                Assert.assertEquals(Integer.valueOf(78), future.get(1, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(1, calls.get());
+
+        Assert.assertEquals(Integer.valueOf(80), flowEngine.execute(flow, 40));
+        Assert.assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testForEach() throws Exception {
+        List<Integer> lines = new ArrayList<>();
+        for (int i = 1; i <= 20; i++) {
+            lines.add(i);
+        }
+        FlowInstance flow = flowEngine.builder()
+                .forEach(null, results -> results.stream().mapToInt(result -> (Integer) result).sum(),
+                        Info.builder().funNode(input -> sleep(100, new CountDownLatch(1), (Integer) input * (Integer) input)).build())
+                .build();
+        long start = System.currentTimeMillis();
+        Assert.assertEquals(Integer.valueOf(2870), flowEngine.execute(flow, lines));
+        Assert.assertTrue(System.currentTimeMillis() - start < 20 * 100);
+        Assert.assertEquals(Integer.valueOf(2870), flowEngine.<List<Integer>, Integer>executeAsync(flow, lines).get(1, TimeUnit.SECONDS));
+
+        FlowInstance chunkFlow = flowEngine.builder()
+                .forEach(input -> (List<?>) input, 8, results -> results,
+                        Info.builder().funNode(input -> ((List<?>) input).size()).build())
+                .build();
+        Assert.assertEquals(List.of(8, 8, 4), flowEngine.execute(chunkFlow, lines));
+
+        FlowInstance failFlow = flowEngine.builder()
+                .forEach(null, results -> results,
+                        Info.builder().funNode(input -> {
+                            if ((Integer) input == 7) {
+                                throw new RuntimeException("invalid line");
+                            }
+                            return input;
+                        }).build())
+                .build();
+        try {
+            flowEngine.execute(failFlow, lines);
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertEquals("invalid line", e.getMessage());
+        }
+
+        // each item runs on its own context copy, merged back in item order although the first item completes last
+        AtomicBoolean leaked = new AtomicBoolean();
+        FlowInstance parityFlow = flowEngine.builder()
+                .forEach(null, results -> results,
+                        Info.builder().idAlias("parity").funNode(input -> {
+                            if (ContextBus.get().getResult("parity") != null) {
+                                leaked.set(true);
+                            }
+                            int line = (Integer) input;
+                            return sleep((7 - line) * 30L, new CountDownLatch(1), line).intValue() % 2 == 0 ? Map.of("even", true) : Map.of("even", false);
+                        }).build())
+                .next(input -> List.of(((List<?>) input).size(), ((ContextBus) ContextBus.get()).getConditionMap().get("even")))
+                .build();
+        Assert.assertEquals(List.of(6, true), flowEngine.execute(parityFlow, List.of(1, 2, 3, 4, 5, 6)));
+        Assert.assertEquals(List.of(6, true), flowEngine.<List<Integer>, List<Object>>executeAsync(parityFlow, List.of(1, 2, 3, 4, 5, 6)).get(1, TimeUnit.SECONDS));
+        Assert.assertFalse(leaked.get());
+    }
+
+    @Test
+    public void testParallelLoop() throws Exception {
+        Set<Integer> indexes = ConcurrentHashMap.newKeySet();
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        AtomicBoolean leaked = new AtomicBoolean();
+        FlowInstance flow = flowEngine.builder()
+                .loop(3, i -> i < 6, Info.builder().idAlias("probe").funNode(input -> {
+                    int index = ContextBus.get().getLoopIndex();
+                    indexes.add(index);
+                    if (ContextBus.get().getResult("probe") != null) {
+                        leaked.set(true);
+                    }
+                    maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                    try {
+                        return sleep(index == 0 ? 300 : 100, new CountDownLatch(1), (Integer) input + index);
+                    } finally {
+                        inFlight.decrementAndGet();
+                    }
+                }).build())
+                .next(input -> List.of(input, ContextBus.get().getResult("probe")))
+                .build();
+        long start = System.currentTimeMillis();
+        List<Object> result = flowEngine.execute(flow, 39);
+        // a sliding window: the slow first iteration does not hold back the other five
+        Assert.assertTrue(System.currentTimeMillis() - start < 450);
+        // results in index order although the first iteration completes last, its writes merged back in index order
+        Assert.assertEquals(List.of(List.of(39, 40, 41, 42, 43, 44), 44), result);
+        Assert.assertEquals(Set.of(0, 1, 2, 3, 4, 5), indexes);
+        Assert.assertTrue(maxInFlight.get() <= 3);
+        Assert.assertFalse(leaked.get());
+
+        FlowInstance pickFlow = flowEngine.builder()
+                .loop(4, i -> i < 4, Info.builder().idAlias("supplier").funNode(input -> {
+                    int supplier = ContextBus.get().getLoopIndex();
+                    return sleep(supplier == 1 ? 200 : 10, new CountDownLatch(1), supplier % 2 == 1 ? supplier : null);
+                }).build())
+                .next(input -> ((List<?>) input).stream().filter(Objects::nonNull).findFirst().orElse(null))
+                .build();
+        Assert.assertEquals(1, (Object) flowEngine.execute(pickFlow, 39));
+    }
+
+    @Test
+    public void testDag() throws Exception {
+        AtomicBoolean stockPending = new AtomicBoolean();
+        FlowInstance flow = flowEngine.builder()
+                .dag(
+                        Info.builder().idAlias("price").funNode(input -> sleep(100, new CountDownLatch(1), (Integer) input * 2)).build(),
+                        Info.builder().idAlias("stock").funNode(input -> sleep(400, new CountDownLatch(1), 5)).build(),
+                        Info.builder().idAlias("discount").funNode(input -> {
+                            stockPending.set(ContextBus.get().getResult("stock") == null);
+                            return (Integer) ContextBus.get().getResult("price") - 10;
+                        }).build().cDepends("price"),
+                        Info.builder().idAlias("total").funNode(input ->
+                                (Integer) ContextBus.get().getResult("discount") * (Integer) ContextBus.get().getResult("stock")
+                        ).build().cDepends("discount", "stock"))
+                .next(input -> ((Map<?, ?>) input).get("total"))
+                .build();
+        Assert.assertEquals(Integer.valueOf(340), flowEngine.execute(flow, 39));
+        Assert.assertTrue(stockPending.get());
+        Assert.assertEquals(Integer.valueOf(340), flowEngine.<Integer, Integer>executeAsync(flow, 39).get(1, TimeUnit.SECONDS));
+
+        try {
+            flowEngine.builder()
+                    .dag(Info.builder().idAlias("a").funNode(input -> input).build().cDepends("b"),
+                            Info.builder().idAlias("b").funNode(input -> input).build().cDepends("a"))
+                    .build();
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getMessage().startsWith("dag dependencies have a cycle"));
+        }
+    }
+
+    @Test
+    public void testParallelize() throws Exception {
+        FlowInstance flow = flowEngine.builder()
+                .next(Info.builder().idAlias("price").funNode(input -> sleep(200, new CountDownLatch(1), (Integer) input * 2)).build())
+                .next(Info.builder().idAlias("stock").funNode(input -> sleep(200, new CountDownLatch(1), 5)).build().cReads())
+                .next(Info.builder().idAlias("discount").funNode(input -> {
+                    Assert.assertEquals((Object) ContextBus.get().getResult("price"), ContextBus.get().getPreResult());
+                    return (Integer) input - 10;
+                }).build().cReads("price"))
+                .next(input -> (Integer) ContextBus.get().getPreResult() * (Integer) ContextBus.get().getResult("stock"))
+                .parallelize()
+                .build();
+        long start = System.currentTimeMillis();
+        Assert.assertEquals(Integer.valueOf(340), flowEngine.execute(flow, 39));
+        Assert.assertTrue(System.currentTimeMillis() - start < 400);
+        Assert.assertEquals(Integer.valueOf(340), flowEngine.<Integer, Integer>executeAsync(flow, 39).get(1, TimeUnit.SECONDS));
+
+        FlowInstance failFlow = flowEngine.builder()
+                .next(Info.builder().idAlias("check").funNode(input -> {
+                    throw new RuntimeException("invalid order");
+                }).build())
+                .next(Info.builder().idAlias("audit").funNode(input -> 1).build().cReads())
+                .parallelize()
+                .build();
+        try {
+            flowEngine.execute(failFlow, 39);
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertEquals("invalid order", e.getMessage());
+        }
+
+        CountDownLatch interrupted = new CountDownLatch(1);
+        FlowInstance stopFlow = flowEngine.builder()
+                .next(Info.builder().idAlias("verify").funNode(input -> {
+                    sleep(100, new CountDownLatch(1), null);
+                    ContextBus.get().stopProcess();
+                    return null;
+                }).build())
+                .next(Info.builder().idAlias("charge").funNode(input -> sleep(1000, interrupted, 1)).build().cReads())
+                .next(Info.builder().idAlias("ship").funNode(input -> 2).build().cReads("charge"))
+                .parallelize()
+                .build();
+        Assert.assertNull(flowEngine.execute(stopFlow, 39));
+        Assert.assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+
+        // conditions follow chain order: the later step wins although the earlier one completes last
+        FlowInstance conditionFlow = flowEngine.builder()
+                .next(Info.builder().idAlias("member").funNode(input -> {
+                    sleep(200, new CountDownLatch(1), null);
+                    return Map.of("tier", "silver");
+                }).build())
+                .next(Info.builder().idAlias("promotion").funNode(input -> Map.of("tier", "gold")).build().cReads())
+                .next(Info.builder().idAlias("audit").funNode(input -> Map.of("audited", true)).build().cReads())
+                .next(input -> ((ContextBus) ContextBus.get()).getConditionMap().get("tier"))
+                .parallelize()
+                .build();
+        Assert.assertEquals("gold", flowEngine.execute(conditionFlow, 39));
+
+        FlowInstance boundedFlow = flowEngine.builder()
+                .next(Info.builder().idAlias("slow").funNode(input -> sleep(500, new CountDownLatch(1), 1)).build())
+                .next(Info.builder().idAlias("fast").funNode(input -> 2).build().cReads())
+                .parallelize(100)
+                .build();
+        try {
+            flowEngine.execute(boundedFlow, 39);
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getCause() instanceof TimeoutException);
+        }
+    }
+
+    @Test
+    public void testPipeline() throws Exception {
+        FlowInstance flow = flowEngine.builder()
+                .next(Info.builder().idAlias("parse").funNode(input -> sleep(50, new CountDownLatch(1), (Integer) input + 1)).build())
+                .next(Info.builder().idAlias("lookup").funNode(input -> sleep(100, new CountDownLatch(1), (Integer) input * 2)).build())
+                .build();
+        try (FlowPipeline pipeline = flowEngine.pipeline(flow, 16, 1, 4)) {
+            long start = System.currentTimeMillis();
+            List<CompletableFuture<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(pipeline.submit(i));
+            }
+            for (int i = 0; i < 8; i++) {
+                Assert.assertEquals(Integer.valueOf((i + 1) * 2), futures.get(i).get(2, TimeUnit.SECONDS));
+            }
+            Assert.assertTrue(System.currentTimeMillis() - start < 8 * 150);
+
+            List<FlowPipeline.StageStats> stats = pipeline.getStats();
+            Assert.assertEquals("parse", stats.get(0).getName());
+            Assert.assertEquals("lookup", stats.get(1).getName());
+            Assert.assertEquals(4, stats.get(1).getThreads());
+            Assert.assertEquals(8, stats.get(0).getProcessed());
+            Assert.assertEquals(8, stats.get(1).getProcessed());
+            Assert.assertTrue(stats.get(1).getMeanServiceNanos() >= TimeUnit.MILLISECONDS.toNanos(100));
+            Assert.assertEquals(0, stats.get(0).getQueueDepth());
+
+            pipeline.close();
+            try {
+                pipeline.submit(1).get(1, TimeUnit.SECONDS);
+                Assert.fail();
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+        }
+    }
+
+    @Test
+    public void testPipelineClose() throws Exception {
+        FlowInstance flow = flowEngine.builder()
+                .next(Info.builder().idAlias("parse").funNode(input -> sleep(20, new CountDownLatch(1), (Integer) input + 1)).build())
+                .next(Info.builder().idAlias("lookup").funNode(input -> sleep(50, new CountDownLatch(1), (Integer) input * 2)).build())
+                .build();
+        FlowPipeline pipeline = flowEngine.pipeline(flow, 2, 1);
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(pipeline.submit(i));
+        }
+        // requests still queued in the first step are handed over to the second one before it shuts down
+        pipeline.close();
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(futures.get(i).isDone());
+            Assert.assertEquals(Integer.valueOf((i + 1) * 2), futures.get(i).get());
+        }
+    }
+
+    @Test
+    public void testAsyncNode() throws Exception {
+        FlowInstance flow = flowEngine.builder()
+                .next("bit_delay")
+                .next(input -> (Integer) ContextBus.get().getResult("bit_delay") + (Integer) input)
+                .build();
+        long start = System.currentTimeMillis();
+        CompletableFuture<Integer> future = flowEngine.executeAsync(flow, 39);
+        Assert.assertTrue(System.currentTimeMillis() - start < 150);
+        Assert.assertFalse(future.isDone());
+        Assert.assertEquals(Integer.valueOf(156), future.get(1, TimeUnit.SECONDS));
+        Assert.assertEquals(Integer.valueOf(156), flowEngine.execute(flow, 39));
+
+        int rollbacks = BitDelayNode.ROLLBACKS.get();
+        FlowInstance rollbackFlow = flowEngine.builder()
+                .next("bit_delay")
+                .next(input -> {
+                    ContextBus.get().rollbackProcess();
+                    return null;
+                })
+                .build();
+        Assert.assertNull(flowEngine.<Integer, Integer>executeAsync(rollbackFlow, 39).get(1, TimeUnit.SECONDS));
+        Assert.assertEquals(rollbacks + 1, BitDelayNode.ROLLBACKS.get());
+    }
+
+    @Test
+    public void testStream() throws Exception {
+        FlowInstance flow = flowEngine.builder()
+                .next(input -> sleep(50, new CountDownLatch(1), (Integer) input + 1))
+                .next(input -> sleep(50, new CountDownLatch(1), (Integer) input * 2))
+                .build();
+        List<Integer> results = new ArrayList<>();
+        CompletableFuture<List<Integer>> done = new CompletableFuture<>();
+        long start = System.currentTimeMillis();
+        try (SubmissionPublisher<Integer> source = new SubmissionPublisher<>()) {
+            flowEngine.<Integer, Integer>stream(flow, source, 2).subscribe(new Flow.Subscriber<>() {
+                private Flow.Subscription subscription;
+
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    this.subscription = subscription;
+                    subscription.request(1);
+                }
+
+                @Override
+                public void onNext(Integer item) {
+                    results.add(item);
+                    subscription.request(1);
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    done.completeExceptionally(throwable);
+                }
+
+                @Override
+                public void onComplete() {
+                    done.complete(results);
+                }
+            });
+            for (int i = 0; i < 10; i++) {
+                source.submit(i);
+            }
+        }
+        Assert.assertEquals(List.of(2, 4, 6, 8, 10, 12, 14, 16, 18, 20), done.get(5, TimeUnit.SECONDS));
+        Assert.assertTrue(System.currentTimeMillis() - start < 10 * 100);
+    }
+
+    private static Integer sleep(long millis, CountDownLatch interrupted, Integer result) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            interrupted.countDown();
+        }
+        return result;
+    }
 }
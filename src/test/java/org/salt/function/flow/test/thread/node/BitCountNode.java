@@ -0,0 +1,35 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.salt.function.flow.test.thread.node;
+
+import org.salt.function.flow.node.BatchFlowNode;
+import org.salt.function.flow.node.register.NodeIdentity;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+@NodeIdentity(value = "bit_count", batchWindow = 200, batchSize = 4)
+public class BitCountNode extends BatchFlowNode<Integer, Integer> {
+
+    public static final List<Integer> BATCH_SIZES = new CopyOnWriteArrayList<>();
+
+    @Override
+    public List<Integer> processBatch(List<Integer> inputs) {
+        BATCH_SIZES.add(inputs.size());
+        System.out.println("DemoBitCountNode batch: " + inputs);
+        return inputs.stream().map(Integer::bitCount).collect(Collectors.toList());
+    }
+}
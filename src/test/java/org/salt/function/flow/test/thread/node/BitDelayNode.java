@@ -0,0 +1,39 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.salt.function.flow.test.thread.node;
+
+import org.salt.function.flow.node.AsyncFlowNode;
+import org.salt.function.flow.node.register.NodeIdentity;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@NodeIdentity(value = "bit_delay")
+public class BitDelayNode extends AsyncFlowNode<Integer, Integer> {
+
+    public static final AtomicInteger ROLLBACKS = new AtomicInteger();
+
+    @Override
+    public CompletionStage<Integer> processAsync(Integer input) {
+        return CompletableFuture.supplyAsync(() -> input << 1, CompletableFuture.delayedExecutor(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Override
+    public void rollback() {
+        ROLLBACKS.incrementAndGet();
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.salt.function.flow.thread;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class CancelTokenTest {
+
+    @Test
+    public void testCancelExcludesInnerWrites() {
+        try {
+            CancelToken outer = CancelToken.fork();
+            outer.install();
+            CancelToken inner = CancelToken.fork();
+            CancelToken done = CancelToken.fork();
+            Assert.assertTrue(inner.commit(() -> {}));
+
+            done.done();
+            Assert.assertTrue(outer.cancel());
+            Assert.assertFalse(outer.cancel());
+            Assert.assertFalse(done.cancel());
+            Assert.assertTrue(inner.isCancelled());
+            Assert.assertFalse(inner.commit(() -> Assert.fail()));
+            Assert.assertFalse(outer.commit(() -> Assert.fail()));
+        } finally {
+            TheadHelper.clean();
+        }
+    }
+
+    @Test
+    public void testCancelWaitsForWrite() throws Exception {
+        try {
+            CancelToken outer = CancelToken.fork();
+            outer.install();
+            CancelToken first = CancelToken.fork();
+            CancelToken second = CancelToken.fork();
+            CountDownLatch writing = new CountDownLatch(2);
+            CountDownLatch release = new CountDownLatch(1);
+            AtomicBoolean written = new AtomicBoolean();
+            // sibling writes run at once, neither waits for the other
+            CompletableFuture<Boolean> firstWrite = CompletableFuture.supplyAsync(() -> first.commit(() -> {
+                writing.countDown();
+                await(release);
+                written.set(true);
+            }));
+            CompletableFuture<Boolean> secondWrite = CompletableFuture.supplyAsync(() -> second.commit(writing::countDown));
+            Assert.assertTrue(writing.await(1, TimeUnit.SECONDS));
+            Assert.assertTrue(secondWrite.get(1, TimeUnit.SECONDS));
+
+            CompletableFuture<Boolean> cancel = CompletableFuture.supplyAsync(outer::cancel);
+            Thread.sleep(50);
+            Assert.assertFalse(cancel.isDone());
+            release.countDown();
+            Assert.assertTrue(cancel.get(1, TimeUnit.SECONDS));
+            Assert.assertTrue(written.get());
+            Assert.assertTrue(firstWrite.get(1, TimeUnit.SECONDS));
+        } finally {
+            TheadHelper.clean();
+        }
+    }
+
+    @Test
+    public void testCancelParksDuringLongWrite() throws Exception {
+        CancelToken token = CancelToken.fork();
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Boolean> write = CompletableFuture.supplyAsync(() -> token.commit(() -> {
+            writing.countDown();
+            await(release);
+        }));
+        Assert.assertTrue(writing.await(1, TimeUnit.SECONDS));
+
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Thread canceller = new Thread(() -> cancelled.set(token.cancel()));
+        canceller.start();
+        Thread.sleep(50);
+        // a write that outlasts the spins leaves the cancelling thread parked, not burning a core
+        Assert.assertEquals(Thread.State.WAITING, canceller.getState());
+        release.countDown();
+        canceller.join(1000);
+        Assert.assertFalse(canceller.isAlive());
+        Assert.assertTrue(cancelled.get());
+        Assert.assertTrue(write.get(1, TimeUnit.SECONDS));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
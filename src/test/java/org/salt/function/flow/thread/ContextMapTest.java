@@ -0,0 +1,95 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.salt.function.flow.thread;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class ContextMapTest {
+
+    @Test
+    public void testForkIsolation() {
+        ContextMap parent = new ContextMap();
+        parent.put("a", 1);
+        ContextMap child = ContextMap.fork(parent);
+        ContextMap sibling = ContextMap.fork(parent);
+        Assert.assertEquals(1, child.get("a"));
+
+        child.put("a", 2);
+        child.put("b", 3);
+        parent.put("c", 4);
+        sibling.remove("a");
+
+        Assert.assertEquals(Map.of("a", 1, "c", 4), Map.copyOf(parent));
+        Assert.assertEquals(Map.of("a", 2, "b", 3), Map.copyOf(child));
+        Assert.assertTrue(sibling.isEmpty());
+
+        Set<Map.Entry<String, Object>> entries = parent.entrySet();
+        parent.put("d", 5);
+        Assert.assertEquals(2, entries.size());
+        Assert.assertEquals(5, parent.get("d"));
+    }
+
+    @Test
+    public void testDecoratorForksUserMap() throws Exception {
+        List<ThreadLocal<?>> registered = TheadHelper.getThreadLocalUsers();
+        ThreadLocal<Map<String, Object>> userThreadLocal = new ThreadLocal<>();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        TheadHelper.initThreadLocal(userThreadLocal);
+        try {
+            userThreadLocal.set(new HashMap<>(Map.of("a", 1)));
+            Callable<Map<String, Object>> first = TheadHelper.getDecoratorAsync(() -> {
+                userThreadLocal.get().put("b", 2);
+                return Map.copyOf(userThreadLocal.get());
+            });
+            // the map is copied once for the thread, later tasks share it until either side writes
+            Map<String, Object> adopted = userThreadLocal.get();
+            Callable<Map<String, Object>> second = TheadHelper.getDecoratorAsync(() -> Map.copyOf(userThreadLocal.get()));
+            Assert.assertSame(adopted, userThreadLocal.get());
+            userThreadLocal.get().put("c", 3);
+
+            Assert.assertEquals(Map.of("a", 1, "b", 2), executor.submit(first).get());
+            Assert.assertEquals(Map.of("a", 1), executor.submit(second).get());
+            Assert.assertEquals(Map.of("a", 1, "c", 3), Map.copyOf(userThreadLocal.get()));
+        } finally {
+            executor.shutdown();
+            userThreadLocal.remove();
+            TheadHelper.initThreadLocal(registered.toArray(new ThreadLocal<?>[0]));
+            TheadHelper.clean();
+        }
+    }
+
+    @Test
+    public void testDecoratorWithNullUserThreadLocal() throws Exception {
+        List<ThreadLocal<?>> registered = TheadHelper.getThreadLocalUsers();
+        ThreadLocal<Object> userThreadLocal = new ThreadLocal<>();
+        TheadHelper.initThreadLocal(userThreadLocal);
+        try {
+            TheadHelper.putThreadLocal("key", "value");
+            Assert.assertEquals("value", TheadHelper.getDecoratorAsync(() -> TheadHelper.getThreadLocal("key")).call());
+        } finally {
+            TheadHelper.initThreadLocal(registered.toArray(new ThreadLocal<?>[0]));
+            TheadHelper.clean();
+        }
+    }
+}
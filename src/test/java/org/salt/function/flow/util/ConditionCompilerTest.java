@@ -0,0 +1,102 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.salt.function.flow.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ConditionCompilerTest {
+
+    private static final List<String> SUBSET = List.of(
+            "type == 'VIP'",
+            "type != \"VIP\"",
+            "amount > 100 && channel == 'app'",
+            "amount >= 100.5 || channel == 'web'",
+            "!(amount < 100) and vip == true",
+            "!vip == false",
+            "amount <= -1 or missing == null",
+            "vip",
+            "count == 3 && amount > 99"
+    );
+
+    private static final List<String> OUTSIDE = List.of(
+            "order.vip == true",
+            "amount + 1 > 100",
+            "type in ('VIP', 'SVIP')",
+            "max(amount, 1) > 3",
+            "amount > 100L",
+            "type == 'a\\'b'"
+    );
+
+    @Test
+    public void testSameResultAsQLExpress() {
+        List<Map<String, Object>> maps = List.of(
+                conditionMap("VIP", 200, "app", true, 3L),
+                conditionMap("NORMAL", 100, "web", false, 2),
+                conditionMap("VIP", new BigDecimal("100.5"), "app", false, 3),
+                conditionMap(null, 99.9d, null, true, 3.0d),
+                conditionMap("VIP", -1, "app", true, null)
+        );
+        for (String condition : SUBSET) {
+            Assert.assertNotNull(condition, ConditionCompiler.compile(condition));
+            for (Map<String, Object> map : maps) {
+                Assert.assertEquals(condition + " " + map, FlowUtil.el(condition, map), FlowUtil.compile(condition).test(map));
+            }
+        }
+    }
+
+    @Test
+    public void testOutsideSubset() {
+        for (String condition : OUTSIDE) {
+            Assert.assertNull(condition, ConditionCompiler.compile(condition));
+        }
+    }
+
+    @Test
+    public void testFallbackOnUnsupportedOperands() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("amount", "200");
+        Assert.assertThrows(RuntimeException.class, () -> ConditionCompiler.compile("amount > 100").test(map));
+        Assert.assertEquals(FlowUtil.el("amount > 100", map), FlowUtil.compile("amount > 100").test(map));
+    }
+
+    @Test
+    public void testFallbackOnNonFiniteDecimalOperands() {
+        for (double amount : new double[]{Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY}) {
+            Map<String, Object> map = new HashMap<>();
+            map.put("amount", amount);
+            map.put("limit", new BigDecimal("100.5"));
+            Assert.assertThrows(RuntimeException.class, () -> ConditionCompiler.compile("amount > limit").test(map));
+            Assert.assertEquals(FlowUtil.el("amount > limit", map), FlowUtil.compile("amount > limit").test(map));
+            Assert.assertEquals(FlowUtil.el("amount == limit", map), FlowUtil.compile("amount == limit").test(map));
+        }
+    }
+
+    private static Map<String, Object> conditionMap(String type, Number amount, String channel, Boolean vip, Number count) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("type", type);
+        map.put("amount", amount);
+        map.put("channel", channel);
+        map.put("vip", vip);
+        map.put("count", count);
+        map.values().removeIf(java.util.Objects::isNull);
+        return map;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.salt.function.flow.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBuckets() {
+        for (long value : new long[]{0, 1, 7, 8, 15, 16, 17, 100, 1000, 123456789L, Long.MAX_VALUE}) {
+            long upperBound = LatencyHistogram.upperBound(LatencyHistogram.index(value));
+            Assert.assertTrue(value + " " + upperBound, upperBound >= value);
+            Assert.assertTrue(value + " " + upperBound, upperBound - value <= value / 8);
+        }
+    }
+
+    @Test
+    public void testPercentile() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(-1, histogram.percentile(0.95));
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 10);
+        }
+        long p95 = histogram.percentile(0.95);
+        Assert.assertTrue(String.valueOf(p95), p95 >= 950 && p95 <= 950 * 9 / 8);
+        Assert.assertEquals(100, histogram.count());
+    }
+
+    @Test
+    public void testDecay() {
+        LatencyHistogram histogram = new LatencyHistogram(64);
+        for (int i = 0; i < 64; i++) {
+            histogram.record(10000);
+        }
+        for (int i = 0; i < 320; i++) {
+            histogram.record(10);
+        }
+        Assert.assertTrue(histogram.percentile(0.95) < 100);
+    }
+}
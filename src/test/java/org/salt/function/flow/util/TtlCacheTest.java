@@ -0,0 +1,57 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.salt.function.flow.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TtlCacheTest {
+
+    @Test
+    public void testExpiry() {
+        AtomicLong now = new AtomicLong();
+        TtlCache<String, Integer> cache = new TtlCache<>(100, 16, now::get);
+        cache.put("a", 1);
+        Assert.assertEquals(Integer.valueOf(1), cache.get("a"));
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(99));
+        Assert.assertEquals(Integer.valueOf(1), cache.get("a"));
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(2, cache.hitCount());
+        Assert.assertEquals(1, cache.missCount());
+    }
+
+    @Test
+    public void testEviction() {
+        TtlCache<Integer, Integer> cache = new TtlCache<>(0, 1);
+        cache.put(1, 1);
+        cache.put(2, 2);
+        Assert.assertNull(cache.get(1));
+        Assert.assertEquals(Integer.valueOf(2), cache.get(2));
+
+        cache = new TtlCache<>(0, 64);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i, i);
+            cache.get(0);
+        }
+        Assert.assertTrue(cache.size() <= 64);
+        Assert.assertEquals(Integer.valueOf(0), cache.get(0));
+        Assert.assertEquals(Integer.valueOf(999), cache.get(999));
+    }
+}